@@ -21,14 +21,20 @@ package com.l2jserver.loginserver;
 import static com.l2jserver.loginserver.config.Configuration.server;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.l2jserver.loginserver.util.ProxyProtocol;
+
 /**
  * Flood Protected listener.
  * @author -Wooden-
@@ -42,11 +48,27 @@ public abstract class FloodProtectedListener extends Thread {
 	
 	private final ServerSocket _serverSocket;
 	
+	private final ProxyProtocol _proxyProtocol;
+	
+	/** Threads reading the PROXY protocol headers, so a slow proxy doesn't hold back the accept loop. */
+	private final ExecutorService _headerReaders;
+	
 	public FloodProtectedListener(String listenIp, int port) throws Exception {
+		_proxyProtocol = server().isGameServerProxyProtocolEnabled() ? new ProxyProtocol(server().getProxyProtocolTrustedProxies(), server().getProxyProtocolTimeout()) : null;
+		_headerReaders = _proxyProtocol != null ? Executors.newCachedThreadPool(r -> {
+			final var thread = new Thread(r, "ProxyHeaderReader");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+		_serverSocket = new ServerSocket();
+		// Lets a new login server process listen on the same port while this one drains.
+		if (server().isLoginRestartHandoffEnabled() && _serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+			_serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+		}
 		if (listenIp.equals("*")) {
-			_serverSocket = new ServerSocket(port);
+			_serverSocket.bind(new InetSocketAddress(port), 50);
 		} else {
-			_serverSocket = new ServerSocket(port, 50, InetAddress.getByName(listenIp));
+			_serverSocket.bind(new InetSocketAddress(InetAddress.getByName(listenIp), port), 50);
 		}
 	}
 	
@@ -56,36 +78,15 @@ public abstract class FloodProtectedListener extends Thread {
 		while (!isInterrupted()) {
 			try {
 				connection = _serverSocket.accept();
-				if (server().isFloodProtectionEnabled()) {
-					ForeignConnection fConnection = _floodProtection.get(connection.getInetAddress().getHostAddress());
-					if (fConnection != null) {
-						fConnection.connectionNumber += 1;
-						if (((fConnection.connectionNumber > server().getFastConnectionLimit()) && //
-							((System.currentTimeMillis() - fConnection.lastConnection) < server().getNormalConnectionTime())) || //
-							((System.currentTimeMillis() - fConnection.lastConnection) < server().getFastConnectionTime()) || //
-							(fConnection.connectionNumber > server().getMaxConnectionPerIP())) {
-							fConnection.lastConnection = System.currentTimeMillis();
-							connection.close();
-							fConnection.connectionNumber -= 1;
-							if (!fConnection.isFlooding) {
-								LOG.warn("Potential Flood from {}!", connection.getInetAddress().getHostAddress());
-							}
-							fConnection.isFlooding = true;
-							continue;
-						}
-						if (fConnection.isFlooding) // if connection was flooding server but now passed the check
-						{
-							fConnection.isFlooding = false;
-							LOG.info("Connection {} is not considered as flooding anymore.", connection.getInetAddress().getHostAddress());
-						}
-						fConnection.lastConnection = System.currentTimeMillis();
-					} else {
-						fConnection = new ForeignConnection(System.currentTimeMillis());
-						_floodProtection.put(connection.getInetAddress().getHostAddress(), fConnection);
-					}
+				if (_proxyProtocol == null) {
+					accept(connection, connection.getInetAddress());
+				} else if (!_proxyProtocol.isTrusted(connection.getInetAddress())) {
+					LOG.warn("Refused connection from {}, it's not a trusted proxy!", connection.getInetAddress().getHostAddress());
+					connection.close();
+				} else {
+					final var proxied = connection;
+					_headerReaders.execute(() -> acceptProxied(proxied));
 				}
-				
-				addClient(connection);
 			} catch (Exception e) {
 				if (isInterrupted()) {
 					close();
@@ -95,6 +96,65 @@ public abstract class FloodProtectedListener extends Thread {
 		}
 	}
 	
+	/**
+	 * Reads the PROXY protocol header of a connection from a trusted proxy, then accepts it.
+	 * @param connection the accepted connection
+	 */
+	private void acceptProxied(Socket connection) {
+		try {
+			final InetAddress address;
+			try {
+				address = _proxyProtocol.readHeader(connection);
+			} catch (Exception ex) {
+				LOG.warn("Invalid PROXY protocol header from {}!", connection.getInetAddress().getHostAddress(), ex);
+				connection.close();
+				return;
+			}
+			accept(connection, address);
+		} catch (Exception ex) {
+			LOG.warn("There has been an error accepting the connection from {}!", connection.getInetAddress().getHostAddress(), ex);
+		}
+	}
+	
+	/**
+	 * Applies the flood protection to a connection and adds it as client if it passes.
+	 * @param connection the accepted connection
+	 * @param address the address of the peer
+	 * @throws Exception if the refused connection couldn't be closed
+	 */
+	private synchronized void accept(Socket connection, InetAddress address) throws Exception {
+		if (server().isFloodProtectionEnabled()) {
+			ForeignConnection fConnection = _floodProtection.get(address.getHostAddress());
+			if (fConnection != null) {
+				fConnection.connectionNumber += 1;
+				if (((fConnection.connectionNumber > server().getFastConnectionLimit()) && //
+					((System.currentTimeMillis() - fConnection.lastConnection) < server().getNormalConnectionTime())) || //
+					((System.currentTimeMillis() - fConnection.lastConnection) < server().getFastConnectionTime()) || //
+					(fConnection.connectionNumber > server().getMaxConnectionPerIP())) {
+					fConnection.lastConnection = System.currentTimeMillis();
+					connection.close();
+					fConnection.connectionNumber -= 1;
+					if (!fConnection.isFlooding) {
+						LOG.warn("Potential Flood from {}!", address.getHostAddress());
+					}
+					fConnection.isFlooding = true;
+					return;
+				}
+				if (fConnection.isFlooding) // if connection was flooding server but now passed the check
+				{
+					fConnection.isFlooding = false;
+					LOG.info("Connection {} is not considered as flooding anymore.", address.getHostAddress());
+				}
+				fConnection.lastConnection = System.currentTimeMillis();
+			} else {
+				fConnection = new ForeignConnection(System.currentTimeMillis());
+				_floodProtection.put(address.getHostAddress(), fConnection);
+			}
+		}
+		
+		addClient(connection, address);
+	}
+	
 	protected static class ForeignConnection {
 		public int connectionNumber;
 		public long lastConnection;
@@ -106,9 +166,9 @@ public abstract class FloodProtectedListener extends Thread {
 		}
 	}
 	
-	public abstract void addClient(Socket s);
+	public abstract void addClient(Socket s, InetAddress address);
 	
-	public void removeFloodProtection(String ip) {
+	public synchronized void removeFloodProtection(String ip) {
 		if (!server().isFloodProtectionEnabled()) {
 			return;
 		}
@@ -124,6 +184,9 @@ public abstract class FloodProtectedListener extends Thread {
 	}
 	
 	public void close() {
+		if (_headerReaders != null) {
+			_headerReaders.shutdownNow();
+		}
 		try {
 			_serverSocket.close();
 		} catch (Exception ex) {
@@ -20,6 +20,7 @@ package com.l2jserver.loginserver;
 
 import static com.l2jserver.loginserver.config.Configuration.server;
 
+import java.net.InetAddress;
 import java.net.Socket;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -38,8 +39,8 @@ public class GameServerListener extends FloodProtectedListener {
 	}
 	
 	@Override
-	public void addClient(Socket s) {
-		_gameServers.add(new GameServerThread(s));
+	public void addClient(Socket s, InetAddress address) {
+		_gameServers.add(new GameServerThread(s, address));
 	}
 	
 	public void removeGameServer(GameServerThread gst) {
@@ -18,23 +18,32 @@
  */
 package com.l2jserver.loginserver;
 
+import static com.l2jserver.loginserver.config.Configuration.server;
+
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.spec.RSAKeyGenParameterSpec;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.l2jserver.commons.dao.ServerNameDAO;
 import com.l2jserver.commons.database.ConnectionFactory;
-import com.l2jserver.commons.util.Rnd;
 import com.l2jserver.loginserver.network.gameserverpackets.ServerStatus;
+import com.l2jserver.loginserver.network.serverpackets.ServerList;
+import com.l2jserver.loginserver.network.serverpackets.ServerList.ServerData;
+import com.l2jserver.loginserver.security.KeyCache;
+import com.l2jserver.loginserver.security.KeyPairPool;
 import com.l2jserver.loginserver.util.IPSubnet;
 
 /**
@@ -47,42 +56,57 @@ public final class GameServerTable {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(GameServerTable.class);
 	
-	private static final Map<Integer, GameServerInfo> GAME_SERVER_TABLE = new HashMap<>();
-	
 	private static final int KEYS_SIZE = 10;
 	
-	private KeyPair[] _keyPairs;
+	private static final String KEY_CACHE_SECTION = "gameserver";
+	
+	private static final byte[] LOOPBACK = {
+		127,
+		0,
+		0,
+		1
+	};
+	
+	/** Incremented on every change shown in the server list. */
+	private static final AtomicInteger SERVER_LIST_VERSION = new AtomicInteger();
+	
+	private final KeyPairPool<KeyPair> _keyPairs;
+	
+	/** Registered game servers by ID, replaced by a new copy on every registration so it can be read without locking. */
+	private volatile Map<Integer, GameServerInfo> _gameServers = Map.of();
+	
+	private final Object _registrationLock = new Object();
+	
+	private volatile ServerListSnapshot _serverList;
 	
 	public GameServerTable() {
 		loadRegisteredGameServers();
-		LOG.info("{}: Loaded {} registered Game Servers.", getClass().getSimpleName(), GAME_SERVER_TABLE.size());
+		LOG.info("{}: Loaded {} registered Game Servers.", getClass().getSimpleName(), _gameServers.size());
 		
-		initRSAKeys();
-		LOG.info("{}: Cached {} RSA keys for Game Server communication.", getClass().getSimpleName(), _keyPairs.length);
+		// Generate keys for Game Server communication in background
+		_keyPairs = new KeyPairPool<>("Game Servers", KEYS_SIZE, 512, server().getRSAKeyPairsMinimum(), keyPair -> keyPair);
+		_keyPairs.setListener(keyPairs -> KeyCache.getInstance().storeKeyPairs(KEY_CACHE_SECTION, keyPairs));
+		_keyPairs.start(KeyCache.getInstance().getKeyPairs(KEY_CACHE_SECTION), server().getRSAKeyPairsRotationTime());
 	}
 	
-	private void initRSAKeys() {
-		try {
-			final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-			keyGen.initialize(new RSAKeyGenParameterSpec(512, RSAKeyGenParameterSpec.F4));
-			_keyPairs = new KeyPair[KEYS_SIZE];
-			for (int i = 0; i < KEYS_SIZE; i++) {
-				_keyPairs[i] = keyGen.genKeyPair();
-			}
-		} catch (Exception e) {
-			LOG.error("{}: Error loading RSA keys for Game Server communication!", getClass().getSimpleName(), e);
-		}
+	/**
+	 * Waits until enough RSA key pairs for Game Server communication have been generated.
+	 */
+	public void awaitKeyPairs() {
+		_keyPairs.awaitMinimum();
 	}
 	
 	private void loadRegisteredGameServers() {
 		try (var con = ConnectionFactory.getInstance().getConnection();
 			var ps = con.createStatement();
 			var rs = ps.executeQuery("SELECT * FROM gameservers")) {
+			final Map<Integer, GameServerInfo> gameServers = new TreeMap<>();
 			int id;
 			while (rs.next()) {
 				id = rs.getInt("server_id");
-				GAME_SERVER_TABLE.put(id, new GameServerInfo(id, stringToHex(rs.getString("hexid"))));
+				gameServers.put(id, new GameServerInfo(id, stringToHex(rs.getString("hexid"))));
 			}
+			_gameServers = Collections.unmodifiableMap(gameServers);
 		} catch (Exception e) {
 			LOG.error("{}: Error loading registered game servers!", getClass().getSimpleName(), e);
 		}
@@ -90,10 +114,10 @@ public final class GameServerTable {
 	
 	/**
 	 * Gets the registered game servers.
-	 * @return the registered game servers
+	 * @return an unmodifiable snapshot of the registered game servers, ordered by ID
 	 */
 	public Map<Integer, GameServerInfo> getRegisteredGameServers() {
-		return GAME_SERVER_TABLE;
+		return _gameServers;
 	}
 	
 	/**
@@ -102,7 +126,7 @@ public final class GameServerTable {
 	 * @return the registered game server by id
 	 */
 	public GameServerInfo getRegisteredGameServerById(int id) {
-		return GAME_SERVER_TABLE.get(id);
+		return _gameServers.get(id);
 	}
 	
 	/**
@@ -111,7 +135,7 @@ public final class GameServerTable {
 	 * @return true, if successful
 	 */
 	public boolean hasRegisteredGameServerOnId(int id) {
-		return GAME_SERVER_TABLE.containsKey(id);
+		return _gameServers.containsKey(id);
 	}
 	
 	/**
@@ -121,11 +145,11 @@ public final class GameServerTable {
 	 */
 	public boolean registerWithFirstAvailableId(GameServerInfo gsi) {
 		// avoid two servers registering with the same "free" id
-		synchronized (GAME_SERVER_TABLE) {
+		synchronized (_registrationLock) {
 			for (Integer serverId : ServerNameDAO.getServers().keySet()) {
-				if (!GAME_SERVER_TABLE.containsKey(serverId)) {
-					GAME_SERVER_TABLE.put(serverId, gsi);
+				if (!_gameServers.containsKey(serverId)) {
 					gsi.setId(serverId);
+					publish(serverId, gsi);
 					return true;
 				}
 			}
@@ -141,15 +165,27 @@ public final class GameServerTable {
 	 */
 	public boolean register(int id, GameServerInfo gsi) {
 		// avoid two servers registering with the same id
-		synchronized (GAME_SERVER_TABLE) {
-			if (!GAME_SERVER_TABLE.containsKey(id)) {
-				GAME_SERVER_TABLE.put(id, gsi);
+		synchronized (_registrationLock) {
+			if (!_gameServers.containsKey(id)) {
+				publish(id, gsi);
 				return true;
 			}
 		}
 		return false;
 	}
 	
+	/**
+	 * Publishes a copy of the registered game servers with the given one added, must be called holding the registration lock.
+	 * @param id the game server ID
+	 * @param gsi the game server
+	 */
+	private void publish(int id, GameServerInfo gsi) {
+		final Map<Integer, GameServerInfo> gameServers = new TreeMap<>(_gameServers);
+		gameServers.put(id, gsi);
+		_gameServers = Collections.unmodifiableMap(gameServers);
+		invalidateServerList();
+	}
+	
 	/**
 	 * Wrapper method.
 	 * @param gsi the game server info DTO.
@@ -177,12 +213,33 @@ public final class GameServerTable {
 		}
 	}
 	
+	/**
+	 * Gets the server list, it's rebuilt on the first call after a change.
+	 * @return the server list snapshot
+	 */
+	public ServerListSnapshot getServerList() {
+		final int version = SERVER_LIST_VERSION.get();
+		var serverList = _serverList;
+		if ((serverList == null) || (serverList.getVersion() != version)) {
+			serverList = new ServerListSnapshot(version, _gameServers.values());
+			_serverList = serverList;
+		}
+		return serverList;
+	}
+	
+	/**
+	 * Marks the server list as changed, the next ServerList packet gets a new snapshot.
+	 */
+	public void invalidateServerList() {
+		SERVER_LIST_VERSION.incrementAndGet();
+	}
+	
 	/**
 	 * Gets the key pair.
 	 * @return a random key pair.
 	 */
 	public KeyPair getKeyPair() {
-		return _keyPairs[Rnd.nextInt(10)];
+		return _keyPairs.get();
 	}
 	
 	/**
@@ -211,21 +268,93 @@ public final class GameServerTable {
 	 */
 	public static class GameServerInfo {
 		// auth
-		private int _id;
+		private volatile int _id;
 		private final byte[] _hexId;
-		private boolean _isAuthed;
 		// status
-		private GameServerThread _gst;
-		private int _status;
+		private volatile GameServerStatus _status;
 		// network
-		private final ArrayList<GameServerAddress> _addrs = new ArrayList<>(5);
-		private int _port;
+		private volatile List<GameServerAddress> _addrs = List.of();
 		// config
 		private final boolean _isPvp = true;
-		private int _serverType;
-		private int _ageLimit;
-		private boolean _isShowingBrackets;
-		private int _maxPlayers;
+		
+		/**
+		 * Status of a game server, replaced as a whole on every change so the client threads read a consistent status without locking.
+		 * @param authed if the game server is authed
+		 * @param gameServerThread the game server thread, {@code null} if the game server is not connected
+		 * @param status the server status
+		 * @param port the port
+		 * @param maxPlayers the max players
+		 * @param serverType the server type
+		 * @param ageLimit the age limit
+		 * @param showingBrackets if the server name is shown with brackets
+		 * @param autoStatus the status computed from the load
+		 */
+		public record GameServerStatus(boolean authed, GameServerThread gameServerThread, int status, int port, int maxPlayers, int serverType, int ageLimit, boolean showingBrackets, int autoStatus) {
+			
+			GameServerStatus withAuthed(boolean value) {
+				return new GameServerStatus(value, gameServerThread, status, port, maxPlayers, serverType, ageLimit, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withGameServerThread(GameServerThread value) {
+				return new GameServerStatus(authed, value, status, port, maxPlayers, serverType, ageLimit, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withStatus(int value) {
+				return new GameServerStatus(authed, gameServerThread, value, port, maxPlayers, serverType, ageLimit, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withPort(int value) {
+				return new GameServerStatus(authed, gameServerThread, status, value, maxPlayers, serverType, ageLimit, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withMaxPlayers(int value) {
+				return new GameServerStatus(authed, gameServerThread, status, port, value, serverType, ageLimit, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withServerType(int value) {
+				return new GameServerStatus(authed, gameServerThread, status, port, maxPlayers, value, ageLimit, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withAgeLimit(int value) {
+				return new GameServerStatus(authed, gameServerThread, status, port, maxPlayers, serverType, value, showingBrackets, autoStatus);
+			}
+			
+			GameServerStatus withShowingBrackets(boolean value) {
+				return new GameServerStatus(authed, gameServerThread, status, port, maxPlayers, serverType, ageLimit, value, autoStatus);
+			}
+			
+			GameServerStatus withAutoStatus(int value) {
+				return new GameServerStatus(authed, gameServerThread, status, port, maxPlayers, serverType, ageLimit, showingBrackets, value);
+			}
+			
+			/**
+			 * Gets the status shown to the clients, computed from the load when the game server reports {@link ServerStatus#STATUS_AUTO}.
+			 * @return the effective status
+			 */
+			public int effectiveStatus() {
+				return status == ServerStatus.STATUS_AUTO ? autoStatus : status;
+			}
+			
+			/**
+			 * Gets the number of players the game server can still take.<br>
+			 * The computed Full status only limits the logins when AutoStatusLimitsLogins is enabled, otherwise it's shown to the clients only.
+			 * @return the free slots
+			 */
+			public int freeSlots() {
+				if (server().isAutoStatusLimitingLogins() && (status == ServerStatus.STATUS_AUTO) && (autoStatus == ServerStatus.STATUS_FULL)) {
+					return 0;
+				}
+				return Math.max(0, maxPlayers - currentPlayerCount());
+			}
+			
+			/**
+			 * Gets the current player count.
+			 * @return the current player count
+			 */
+			public int currentPlayerCount() {
+				return gameServerThread != null ? gameServerThread.getPlayerCount() : 0;
+			}
+		}
 		
 		/**
 		 * Instantiates a new game server info.
@@ -236,8 +365,7 @@ public final class GameServerTable {
 		public GameServerInfo(int id, byte[] hexId, GameServerThread gst) {
 			_id = id;
 			_hexId = hexId;
-			_gst = gst;
-			_status = ServerStatus.STATUS_DOWN;
+			_status = new GameServerStatus(false, gst, ServerStatus.STATUS_DOWN, 0, 0, 0, 0, false, ServerStatus.STATUS_GOOD);
 		}
 		
 		/**
@@ -255,6 +383,61 @@ public final class GameServerTable {
 		 */
 		public void setId(int id) {
 			_id = id;
+			SERVER_LIST_VERSION.incrementAndGet();
+		}
+		
+		/**
+		 * Gets the status of the game server, read it once to get consistent values.
+		 * @return the game server status
+		 */
+		public GameServerStatus getGameServerStatus() {
+			return _status;
+		}
+		
+		/**
+		 * Replaces the status of the game server.
+		 * @param update the function computing the new status from the current one
+		 */
+		private synchronized void update(UnaryOperator<GameServerStatus> update) {
+			var status = update.apply(_status);
+			status = status.withAutoStatus(computeAutoStatus(status));
+			if (status.equals(_status)) {
+				return;
+			}
+			_status = status;
+			SERVER_LIST_VERSION.incrementAndGet();
+		}
+		
+		/**
+		 * Recomputes the status from the load, called when the player count changes.<br>
+		 * The server list is only rebuilt if the status changes, the player counts are filled in by each ServerList packet.
+		 */
+		public void refreshAutoStatus() {
+			update(UnaryOperator.identity());
+		}
+		
+		/**
+		 * Computes the status from the load.<br>
+		 * The status goes up as soon as the load reaches a threshold, but only goes down once the load is below it by the hysteresis, so it doesn't flap around a threshold.
+		 * @param status the game server status
+		 * @return Good, Normal or Full
+		 */
+		private static int computeAutoStatus(GameServerStatus status) {
+			if (status.maxPlayers() <= 0) {
+				return ServerStatus.STATUS_FULL;
+			}
+			
+			final int load = (status.currentPlayerCount() * 100) / status.maxPlayers();
+			final int current = status.autoStatus();
+			final int full = current == ServerStatus.STATUS_FULL ? server().getAutoStatusFullLoad() - server().getAutoStatusHysteresis() : server().getAutoStatusFullLoad();
+			final int normal = current == ServerStatus.STATUS_GOOD ? server().getAutoStatusNormalLoad() : server().getAutoStatusNormalLoad() - server().getAutoStatusHysteresis();
+			if (load >= full) {
+				return ServerStatus.STATUS_FULL;
+			}
+			if (load >= normal) {
+				return ServerStatus.STATUS_NORMAL;
+			}
+			return ServerStatus.STATUS_GOOD;
 		}
 		
 		/**
@@ -282,7 +465,7 @@ public final class GameServerTable {
 		 * @param isAuthed the new authed
 		 */
 		public void setAuthed(boolean isAuthed) {
-			_isAuthed = isAuthed;
+			update(s -> s.withAuthed(isAuthed));
 		}
 		
 		/**
@@ -290,7 +473,7 @@ public final class GameServerTable {
 		 * @return true, if is authed
 		 */
 		public boolean isAuthed() {
-			return _isAuthed;
+			return _status.authed();
 		}
 		
 		/**
@@ -298,7 +481,7 @@ public final class GameServerTable {
 		 * @param gst the new game server thread
 		 */
 		public void setGameServerThread(GameServerThread gst) {
-			_gst = gst;
+			update(s -> s.withGameServerThread(gst));
 		}
 		
 		/**
@@ -306,7 +489,7 @@ public final class GameServerTable {
 		 * @return the game server thread
 		 */
 		public GameServerThread getGameServerThread() {
-			return _gst;
+			return _status.gameServerThread();
 		}
 		
 		/**
@@ -314,19 +497,19 @@ public final class GameServerTable {
 		 * @param status the new status
 		 */
 		public void setStatus(int status) {
-			_status = status;
+			update(s -> s.withStatus(status));
 		}
 		
 		/**
-		 * Gets the status.
-		 * @return the status
+		 * Gets the status shown to the clients.
+		 * @return the status, computed from the load if the game server reported {@link ServerStatus#STATUS_AUTO}
 		 */
 		public int getStatus() {
-			return _status;
+			return _status.effectiveStatus();
 		}
 		
 		public String getStatusName() {
-			return switch (_status) {
+			return switch (getStatus()) {
 				case 0 -> "Auto";
 				case 1 -> "Good";
 				case 2 -> "Normal";
@@ -342,10 +525,7 @@ public final class GameServerTable {
 		 * @return the current player count
 		 */
 		public int getCurrentPlayerCount() {
-			if (_gst == null) {
-				return 0;
-			}
-			return _gst.getPlayerCount();
+			return _status.currentPlayerCount();
 		}
 		
 		/**
@@ -366,7 +546,7 @@ public final class GameServerTable {
 		 * @return the port
 		 */
 		public int getPort() {
-			return _port;
+			return _status.port();
 		}
 		
 		/**
@@ -374,7 +554,7 @@ public final class GameServerTable {
 		 * @param port the new port
 		 */
 		public void setPort(int port) {
-			_port = port;
+			update(s -> s.withPort(port));
 		}
 		
 		/**
@@ -382,7 +562,7 @@ public final class GameServerTable {
 		 * @param maxPlayers the new max players
 		 */
 		public void setMaxPlayers(int maxPlayers) {
-			_maxPlayers = maxPlayers;
+			update(s -> s.withMaxPlayers(maxPlayers));
 		}
 		
 		/**
@@ -390,7 +570,7 @@ public final class GameServerTable {
 		 * @return the max players
 		 */
 		public int getMaxPlayers() {
-			return _maxPlayers;
+			return _status.maxPlayers();
 		}
 		
 		/**
@@ -406,7 +586,7 @@ public final class GameServerTable {
 		 * @param val the new age limit
 		 */
 		public void setAgeLimit(int val) {
-			_ageLimit = val;
+			update(s -> s.withAgeLimit(val));
 		}
 		
 		/**
@@ -414,7 +594,7 @@ public final class GameServerTable {
 		 * @return the age limit
 		 */
 		public int getAgeLimit() {
-			return _ageLimit;
+			return _status.ageLimit();
 		}
 		
 		/**
@@ -422,7 +602,7 @@ public final class GameServerTable {
 		 * @param val the new server type
 		 */
 		public void setServerType(int val) {
-			_serverType = val;
+			update(s -> s.withServerType(val));
 		}
 		
 		/**
@@ -430,7 +610,7 @@ public final class GameServerTable {
 		 * @return the server type
 		 */
 		public int getServerType() {
-			return _serverType;
+			return _status.serverType();
 		}
 		
 		/**
@@ -438,7 +618,7 @@ public final class GameServerTable {
 		 * @param val the new showing brackets
 		 */
 		public void setShowingBrackets(boolean val) {
-			_isShowingBrackets = val;
+			update(s -> s.withShowingBrackets(val));
 		}
 		
 		/**
@@ -446,17 +626,14 @@ public final class GameServerTable {
 		 * @return true, if is showing brackets
 		 */
 		public boolean isShowingBrackets() {
-			return _isShowingBrackets;
+			return _status.showingBrackets();
 		}
 		
 		/**
 		 * Sets the down.
 		 */
 		public void setDown() {
-			setAuthed(false);
-			setPort(0);
-			setGameServerThread(null);
-			setStatus(ServerStatus.STATUS_DOWN);
+			update(s -> new GameServerStatus(false, null, ServerStatus.STATUS_DOWN, 0, s.maxPlayers(), s.serverType(), s.ageLimit(), s.showingBrackets(), ServerStatus.STATUS_GOOD));
 		}
 		
 		/**
@@ -465,8 +642,11 @@ public final class GameServerTable {
 		 * @param addr the addr
 		 * @throws UnknownHostException the unknown host exception
 		 */
-		public void addServerAddress(String subnet, String addr) throws UnknownHostException {
-			_addrs.add(new GameServerAddress(subnet, addr));
+		public synchronized void addServerAddress(String subnet, String addr) throws UnknownHostException {
+			final List<GameServerAddress> addrs = new ArrayList<>(_addrs);
+			addrs.add(new GameServerAddress(subnet, addr));
+			_addrs = List.copyOf(addrs);
+			SERVER_LIST_VERSION.incrementAndGet();
 		}
 		
 		/**
@@ -488,9 +668,10 @@ public final class GameServerTable {
 		 * @return the server addresses
 		 */
 		public String[] getServerAddresses() {
-			String[] result = new String[_addrs.size()];
+			final var addrs = _addrs;
+			String[] result = new String[addrs.size()];
 			for (int i = 0; i < result.length; i++) {
-				result[i] = _addrs.get(i).toString();
+				result[i] = addrs.get(i).toString();
 			}
 			
 			return result;
@@ -499,8 +680,9 @@ public final class GameServerTable {
 		/**
 		 * Clear server addresses.
 		 */
-		public void clearServerAddresses() {
-			_addrs.clear();
+		public synchronized void clearServerAddresses() {
+			_addrs = List.of();
+			SERVER_LIST_VERSION.incrementAndGet();
 		}
 		
 		/**
@@ -509,8 +691,10 @@ public final class GameServerTable {
 		private static class GameServerAddress extends IPSubnet {
 			private final String _serverAddress;
 			
+			private final byte[] _ip;
+			
 			/**
-			 * Instantiates a new game server address.
+			 * Instantiates a new game server address, the address is resolved once here.
 			 * @param subnet the subnet
 			 * @param address the address
 			 * @throws UnknownHostException the unknown host exception
@@ -518,6 +702,14 @@ public final class GameServerTable {
 			public GameServerAddress(String subnet, String address) throws UnknownHostException {
 				super(subnet);
 				_serverAddress = address;
+				byte[] ip;
+				try {
+					ip = InetAddress.getByName(address).getAddress();
+				} catch (UnknownHostException ex) {
+					LOG.warn("There has been an error getting IP from host!", ex);
+					ip = LOOPBACK;
+				}
+				_ip = ip;
 			}
 			
 			/**
@@ -528,6 +720,14 @@ public final class GameServerTable {
 				return _serverAddress;
 			}
 			
+			/**
+			 * Gets the IP the server address resolved to.
+			 * @return the IP, loopback if it couldn't be resolved
+			 */
+			public byte[] getIp() {
+				return _ip;
+			}
+			
 			@Override
 			public String toString() {
 				return _serverAddress + super.toString();
@@ -535,6 +735,98 @@ public final class GameServerTable {
 		}
 	}
 	
+	/**
+	 * Immutable view of the registered game servers, taken when the server list changes.<br>
+	 * The server section of the ServerList packet is encoded once per client view, meaning the server addresses matching the client subnet and if the client is a GM.
+	 */
+	public static final class ServerListSnapshot {
+		
+		private final int _version;
+		
+		private final List<Server> _servers;
+		
+		private final Map<View, byte[]> _serverSections = new ConcurrentHashMap<>();
+		
+		private record Server(GameServerInfo info, ServerData data, List<GameServerInfo.GameServerAddress> addresses) {
+		}
+		
+		private record View(byte[] addresses, boolean gm) {
+			@Override
+			public boolean equals(Object o) {
+				return (o instanceof View view) && (gm == view.gm) && Arrays.equals(addresses, view.addresses);
+			}
+			
+			@Override
+			public int hashCode() {
+				return (31 * Arrays.hashCode(addresses)) + Boolean.hashCode(gm);
+			}
+		}
+		
+		ServerListSnapshot(int version, Iterable<GameServerInfo> gameServers) {
+			_version = version;
+			final List<Server> servers = new ArrayList<>();
+			for (GameServerInfo gsi : gameServers) {
+				final var status = gsi.getGameServerStatus();
+				// The player count changes with every login, it's filled in by getServerSection.
+				final var data = new ServerData(gsi.getId(), LOOPBACK, status.port(), gsi.isPvp(), 0, status.maxPlayers(), status.effectiveStatus(), status.serverType(), status.showingBrackets());
+				servers.add(new Server(gsi, data, gsi._addrs));
+			}
+			_servers = List.copyOf(servers);
+		}
+		
+		int getVersion() {
+			return _version;
+		}
+		
+		/**
+		 * Gets the number of servers in the list.
+		 * @return the server count
+		 */
+		public int getServerCount() {
+			return _servers.size();
+		}
+		
+		/**
+		 * Gets the encoded servers as shown to a client, with their current player counts.
+		 * @param address the client address
+		 * @param gm if the client is a GM, GM only servers are shown as down to other clients
+		 * @return the server section of the ServerList packet
+		 */
+		public byte[] getServerSection(InetAddress address, boolean gm) {
+			final byte[] addresses = new byte[_servers.size()];
+			for (int i = 0; i < addresses.length; i++) {
+				addresses[i] = (byte) indexOf(_servers.get(i).addresses(), address);
+			}
+			final byte[] section = _serverSections.computeIfAbsent(new View(addresses, gm), this::createServerSection).clone();
+			for (int i = 0; i < _servers.size(); i++) {
+				ServerList.setCurrentPlayers(section, i, _servers.get(i).info().getGameServerStatus().currentPlayerCount());
+			}
+			return section;
+		}
+		
+		private static int indexOf(List<GameServerInfo.GameServerAddress> addresses, InetAddress address) {
+			for (int i = 0; i < addresses.size(); i++) {
+				if (addresses.get(i).equals(address)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		private byte[] createServerSection(View view) {
+			final List<ServerData> servers = new ArrayList<>(_servers.size());
+			for (int i = 0; i < _servers.size(); i++) {
+				final var server = _servers.get(i);
+				final var data = server.data();
+				final int index = view.addresses()[i];
+				final byte[] ip = index >= 0 ? server.addresses().get(index).getIp() : LOOPBACK;
+				final int status = (data.status() != ServerStatus.STATUS_GM_ONLY) || view.gm() ? data.status() : ServerStatus.STATUS_DOWN;
+				servers.add(new ServerData(data.serverId(), ip, data.port(), data.pvp(), data.currentPlayers(), data.maxPlayers(), status, data.serverType(), data.brackets()));
+			}
+			return ServerList.createServerSection(servers);
+		}
+	}
+	
 	/**
 	 * Gets the single instance of GameServerTable.
 	 * @return single instance of GameServerTable
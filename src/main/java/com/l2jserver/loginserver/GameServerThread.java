@@ -25,6 +25,7 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.security.KeyPair;
 import java.security.interfaces.RSAPrivateKey;
@@ -83,7 +84,7 @@ public class GameServerThread extends Thread {
 	
 	@Override
 	public void run() {
-		_connectionIPAddress = _connection.getInetAddress().getHostAddress();
+		_connectionIPAddress = _connectionIp;
 		if (GameServerThread.isBannedGameserverIP(_connectionIPAddress)) {
 			LOG.warn("IP Address {} is on banned IP list.", _connectionIPAddress);
 			forceClose(REASON_IP_BANNED);
@@ -144,6 +145,7 @@ public class GameServerThread extends Thread {
 		} finally {
 			if (isAuthed()) {
 				_gsi.setDown();
+				LoginController.getInstance().removeCharactersOnServer(getServerId());
 				
 				LOG.info("Server {}[{}] is now disconnected.", ServerNameDAO.getServer(getServerId()), getServerId());
 			}
@@ -194,9 +196,9 @@ public class GameServerThread extends Thread {
 		return false;
 	}
 	
-	public GameServerThread(Socket con) {
+	public GameServerThread(Socket con, InetAddress address) {
 		_connection = con;
-		_connectionIp = con.getInetAddress().getHostAddress();
+		_connectionIp = address.getHostAddress();
 		try {
 			_in = _connection.getInputStream();
 			_out = new BufferedOutputStream(_connection.getOutputStream());
@@ -304,10 +306,12 @@ public class GameServerThread extends Thread {
 	
 	public void addAccountOnGameServer(String account) {
 		_accountsOnGameServer.add(account);
+		_gsi.refreshAutoStatus();
 	}
 	
 	public void removeAccountOnGameServer(String account) {
 		_accountsOnGameServer.remove(account);
+		_gsi.refreshAutoStatus();
 	}
 	
 	public GameServerState getLoginConnectionState() {
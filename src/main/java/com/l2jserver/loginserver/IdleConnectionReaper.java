@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import static com.l2jserver.loginserver.config.Configuration.server;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.l2jserver.loginserver.network.L2LoginClient;
+import com.l2jserver.loginserver.network.L2LoginClient.LoginClientState;
+import com.l2jserver.loginserver.network.serverpackets.LoginFail.LoginFailReason;
+
+/**
+ * Closes the connections that stay too long before authenticating, in the CONNECTED and AUTHED_GG states.<br>
+ * The limit is per state: the deadline is set when the connection enters the state, packets that don't change the state don't extend it.<br>
+ * The deadlines are kept in a timer wheel, each tick only visits the connections due in that tick.<br>
+ * A connection that changes state gets a new deadline, its previous entry is skipped when its tick comes.<br>
+ * A disconnected connection is removed from the wheel at once, so it isn't kept until its deadline.<br>
+ * The connections are closed from their packet queue, after checking again they are still idle.<br>
+ * Authenticated connections are timed out by the {@link LoginController} purge thread.
+ * @version 2.6.5.2
+ */
+public final class IdleConnectionReaper {
+	
+	/** Time in milliseconds covered by each slot of the wheel. */
+	private static final long TICK = 250;
+	
+	/** Number of slots of the wheel, longer deadlines wait for more than one turn. */
+	private static final int WHEEL_SIZE = 512;
+	
+	private final long _startTime = System.currentTimeMillis();
+	
+	/** Slots of the wheel, guarded by the wheel itself along with the tick. */
+	private final Queue<Deadline>[] _wheel;
+	
+	/** Next tick to process, its slot hasn't been drained yet. */
+	private long _tick;
+	
+	private final AtomicLongArray _reaped = new AtomicLongArray(LoginClientState.values().length);
+	
+	@SuppressWarnings("unchecked")
+	protected IdleConnectionReaper() {
+		_wheel = new Queue[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			_wheel[i] = new ArrayDeque<>();
+		}
+		
+		final var executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final var thread = new Thread(r, "IdleConnectionReaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this::advance, TICK, TICK, MILLISECONDS);
+	}
+	
+	/**
+	 * Sets the deadline of a client for its current state.
+	 * @param client the client
+	 */
+	public void schedule(L2LoginClient client) {
+		final long timeout = switch (client.getState()) {
+			case CONNECTED -> server().getConnectedTimeout() * 1000L;
+			case AUTHED_GG -> server().getAuthedGGTimeout() * 1000L;
+			default -> 0;
+		};
+		if (timeout <= 0) {
+			client.setIdleDeadline(0);
+			return;
+		}
+		
+		final long deadline = System.currentTimeMillis() + timeout;
+		client.setIdleDeadline(deadline);
+		add(new Deadline(client, client.getState(), deadline));
+	}
+	
+	/**
+	 * Removes the deadline of a disconnected client.
+	 * @param client the client
+	 */
+	public void cancel(L2LoginClient client) {
+		final long time = client.getIdleDeadline();
+		client.setIdleDeadline(0);
+		if (time <= 0) {
+			return;
+		}
+		
+		synchronized (_wheel) {
+			// Entries added behind the next tick went to the next slot, which is drained within a tick anyway.
+			final long tick = getTick(time);
+			if (tick >= _tick) {
+				_wheel[(int) (tick % WHEEL_SIZE)].removeIf(deadline -> deadline.client() == client);
+			}
+		}
+	}
+	
+	private void add(Deadline deadline) {
+		synchronized (_wheel) {
+			// Never behind the next tick, its slot is the first one drained.
+			final long tick = Math.max(getTick(deadline.time()), _tick);
+			_wheel[(int) (tick % WHEEL_SIZE)].add(deadline);
+		}
+	}
+	
+	private long getTick(long time) {
+		return ((time - _startTime) + TICK - 1) / TICK;
+	}
+	
+	private void advance() {
+		final long now = System.currentTimeMillis();
+		final long target = (now - _startTime) / TICK;
+		final List<Deadline> due = new ArrayList<>();
+		synchronized (_wheel) {
+			while (_tick <= target) {
+				due.addAll(_wheel[(int) (_tick % WHEEL_SIZE)]);
+				_wheel[(int) (_tick % WHEEL_SIZE)].clear();
+				_tick++;
+			}
+		}
+		
+		for (Deadline deadline : due) {
+			if (!isIdle(deadline)) {
+				// Changed state or disconnected.
+				continue;
+			}
+			
+			if (deadline.time() > now) {
+				// Due in a later turn of the wheel.
+				add(deadline);
+				continue;
+			}
+			
+			final var client = deadline.client();
+			client.getPacketQueue().execute(() -> {
+				if (isIdle(deadline)) {
+					client.setIdleDeadline(0);
+					client.close(LoginFailReason.REASON_ACCESS_FAILED);
+					_reaped.incrementAndGet(deadline.state().ordinal());
+				}
+			});
+		}
+	}
+	
+	private static boolean isIdle(Deadline deadline) {
+		final var client = deadline.client();
+		return (client.getIdleDeadline() == deadline.time()) && (client.getState() == deadline.state());
+	}
+	
+	/**
+	 * Gets the number of connections closed for staying too long in the given state.
+	 * @param state the state
+	 * @return the number of closed connections
+	 */
+	public long getReapedConnections(LoginClientState state) {
+		return _reaped.get(state.ordinal());
+	}
+	
+	private record Deadline(L2LoginClient client, LoginClientState state, long time) {
+	}
+	
+	public static IdleConnectionReaper getInstance() {
+		return SingletonHolder.INSTANCE;
+	}
+	
+	private static class SingletonHolder {
+		protected static final IdleConnectionReaper INSTANCE = new IdleConnectionReaper();
+	}
+}
@@ -20,20 +20,23 @@ package com.l2jserver.loginserver;
 
 import static com.l2jserver.loginserver.config.Configuration.server;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.security.spec.RSAKeyGenParameterSpec.F4;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPrivateKey;
-import java.security.spec.RSAKeyGenParameterSpec;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
 
@@ -47,6 +50,9 @@ import com.l2jserver.loginserver.model.AccountInfo;
 import com.l2jserver.loginserver.network.L2LoginClient;
 import com.l2jserver.loginserver.network.gameserverpackets.ServerStatus;
 import com.l2jserver.loginserver.network.serverpackets.LoginFail.LoginFailReason;
+import com.l2jserver.loginserver.security.BlowfishKey;
+import com.l2jserver.loginserver.security.KeyCache;
+import com.l2jserver.loginserver.security.KeyPairPool;
 import com.l2jserver.loginserver.security.ScrambledKeyPair;
 
 /**
@@ -67,9 +73,29 @@ public class LoginController {
 	private final Map<InetAddress, Integer> _failedLoginAttempts = new ConcurrentHashMap<>();
 	private final Map<InetAddress, Long> _bannedIps = new ConcurrentHashMap<>();
 	
-	protected final ScrambledKeyPair[] _keyPairs;
+	/** Session keys handed over by the previous login server process, waiting for the game servers to authenticate them. */
+	private final Map<String, HandedOffSession> _handedOffSessions = new ConcurrentHashMap<>();
 	
-	protected byte[][] _blowfishKeys;
+	private final AtomicInteger _connectedClients = new AtomicInteger();
+	
+	/** Characters by account and game server from the last ReplyCharacters, least recently used accounts are dropped first. */
+	private final Map<String, Map<Integer, CharacterSummary>> _characterSummaries = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, CharacterSummary>> eldest) {
+			return size() > server().getCharacterCacheSize();
+		}
+	};
+	
+	private static final int KEY_PAIRS = 10;
+	
+	private static final String KEY_CACHE_SECTION = "login";
+	
+	/** Password digest of each packet thread, reset after each hash. */
+	private static final ThreadLocal<MessageDigest> PASSWORD_DIGEST = new ThreadLocal<>();
+	
+	protected final KeyPairPool<ScrambledKeyPair> _keyPairs;
+	
+	protected volatile BlowfishKey[] _blowfishKeys;
 	private static final int BLOWFISH_KEYS = 20;
 	
 	// SQL Queries
@@ -84,22 +110,10 @@ public class LoginController {
 	private LoginController() {
 		LOG.info("Loading Login Controller...");
 		
-		_keyPairs = new ScrambledKeyPair[10];
-		
-		try {
-			final var keygen = KeyPairGenerator.getInstance("RSA");
-			final var spec = new RSAKeyGenParameterSpec(1024, F4);
-			keygen.initialize(spec);
-			for (int i = 0; i < 10; i++) {
-				_keyPairs[i] = new ScrambledKeyPair(keygen.generateKeyPair());
-			}
-			
-			testCipher((RSAPrivateKey) _keyPairs[0].getPair().getPrivate());
-			
-			LOG.info("Cached 10 KeyPairs for RSA communication.");
-		} catch (Exception ex) {
-			LOG.error("There has been an error loading the key pairs!", ex);
-		}
+		// Generate keys for RSA communication in background
+		_keyPairs = new KeyPairPool<>("Login Clients", KEY_PAIRS, 1024, server().getRSAKeyPairsMinimum(), ScrambledKeyPair::new);
+		_keyPairs.setListener(keyPairs -> KeyCache.getInstance().storeKeyPairs(KEY_CACHE_SECTION, keyPairs));
+		_keyPairs.start(KeyCache.getInstance().getKeyPairs(KEY_CACHE_SECTION), server().getRSAKeyPairsRotationTime());
 		
 		// Store keys for blowfish communication
 		generateBlowFishKeys();
@@ -109,6 +123,19 @@ public class LoginController {
 		purge.start();
 	}
 	
+	/**
+	 * Waits until enough RSA key pairs for communication with Login Clients have been generated.
+	 */
+	public void awaitKeyPairs() {
+		_keyPairs.awaitMinimum();
+		
+		try {
+			testCipher((RSAPrivateKey) _keyPairs.get().getPair().getPrivate());
+		} catch (Exception ex) {
+			LOG.error("There has been an error loading the key pairs!", ex);
+		}
+	}
+	
 	/**
 	 * This is mostly to force the initialization of the Crypto Implementation, avoiding it being done on runtime when its first needed.<BR>
 	 * In short it avoids the worst-case execution time on runtime by doing it on loading.
@@ -121,17 +148,37 @@ public class LoginController {
 	}
 	
 	private void generateBlowFishKeys() {
-		_blowfishKeys = new byte[BLOWFISH_KEYS][16];
+		final var cached = KeyCache.getInstance().getBlowfishKeys();
+		if (cached.size() == BLOWFISH_KEYS) {
+			_blowfishKeys = cached.stream().map(BlowfishKey::new).toArray(BlowfishKey[]::new);
+			LOG.info("Loaded {} cached keys for Blowfish communication.", _blowfishKeys.length);
+			// Cached keys are replaced in background right away, the cached ones are served meanwhile.
+			CompletableFuture.runAsync(this::storeBlowFishKeys).exceptionally(ex -> {
+				LOG.warn("There has been an error replacing the cached Blowfish keys!", ex);
+				return null;
+			});
+			return;
+		}
 		
+		storeBlowFishKeys();
+	}
+	
+	/**
+	 * Generates new keys for Blowfish communication, replacing the current ones, and stores them in the key cache.
+	 */
+	private void storeBlowFishKeys() {
+		final byte[][] keys = new byte[BLOWFISH_KEYS][16];
 		for (int i = 0; i < BLOWFISH_KEYS; i++) {
-			for (int j = 0; j < _blowfishKeys[i].length; j++) {
-				_blowfishKeys[i][j] = (byte) (Rnd.nextInt(255) + 1);
+			for (int j = 0; j < keys[i].length; j++) {
+				keys[i][j] = (byte) (Rnd.nextInt(255) + 1);
 			}
 		}
+		_blowfishKeys = Arrays.stream(keys).map(BlowfishKey::new).toArray(BlowfishKey[]::new);
+		KeyCache.getInstance().storeBlowfishKeys(List.of(keys));
 		LOG.info("Stored {} keys for Blowfish communication.", _blowfishKeys.length);
 	}
 	
-	public byte[] getBlowfishKey() {
+	public BlowfishKey getBlowfishKey() {
 		return _blowfishKeys[(int) (Math.random() * BLOWFISH_KEYS)];
 	}
 	
@@ -148,14 +195,22 @@ public class LoginController {
 			return;
 		}
 		_loginServerClients.remove(account);
+		_handedOffSessions.remove(account);
 	}
 	
 	public L2LoginClient getAuthedClient(String account) {
 		return _loginServerClients.get(account);
 	}
 	
-	public AccountInfo retrieveAccountInfo(InetAddress clientAddr, String login, String password) {
-		return retrieveAccountInfo(clientAddr, login, password, true);
+	/**
+	 * Retrieves the account info, checking the password.
+	 * @param clientAddr the client address
+	 * @param login the login, in its canonical lower case form
+	 * @param passwordHash the password hash, see {@link #hashPassword(byte[], int, int)}
+	 * @return the account info, {@code null} if the account doesn't exist or the password is wrong
+	 */
+	public AccountInfo retrieveAccountInfo(InetAddress clientAddr, String login, String passwordHash) {
+		return retrieveAccountInfo(clientAddr, login, passwordHash, true);
 	}
 	
 	private void recordFailedLoginAttempt(InetAddress addr) {
@@ -174,12 +229,8 @@ public class LoginController {
 		_failedLoginAttempts.remove(addr);
 	}
 	
-	private AccountInfo retrieveAccountInfo(InetAddress addr, String login, String password, boolean autoCreateIfEnabled) {
+	private AccountInfo retrieveAccountInfo(InetAddress addr, String login, String hashBase64, boolean autoCreateIfEnabled) {
 		try {
-			final var md = MessageDigest.getInstance("SHA");
-			final var raw = password.getBytes(UTF_8);
-			final var hashBase64 = Base64.getEncoder().encodeToString(md.digest(raw));
-			
 			try (var con = ConnectionFactory.getInstance().getConnection();
 				var ps = con.prepareStatement(USER_INFO_SELECT)) {
 				ps.setString(1, Long.toString(System.currentTimeMillis()));
@@ -222,13 +273,42 @@ public class LoginController {
 			}
 			
 			LOG.info("Auto-created account {}.", login);
-			return retrieveAccountInfo(addr, login, password, false);
+			return retrieveAccountInfo(addr, login, hashBase64, false);
 		} catch (Exception ex) {
 			LOG.warn("There has been an error getting account info for {}!", login, ex);
 			return null;
 		}
 	}
 	
+	/**
+	 * Hashes a password the way it is stored in the accounts table.
+	 * @param password the password
+	 * @return the Base64 encoded SHA-1 hash of the password
+	 * @throws NoSuchAlgorithmException if SHA-1 is not available
+	 */
+	public String hashPassword(String password) throws NoSuchAlgorithmException {
+		final var raw = password.getBytes(UTF_8);
+		return hashPassword(raw, 0, raw.length);
+	}
+	
+	/**
+	 * Hashes a password the way it is stored in the accounts table, straight from its bytes.
+	 * @param password the buffer holding the password
+	 * @param offset the offset of the password
+	 * @param length the length of the password
+	 * @return the Base64 encoded SHA-1 hash of the password
+	 * @throws NoSuchAlgorithmException if SHA-1 is not available
+	 */
+	public String hashPassword(byte[] password, int offset, int length) throws NoSuchAlgorithmException {
+		var md = PASSWORD_DIGEST.get();
+		if (md == null) {
+			md = MessageDigest.getInstance("SHA");
+			PASSWORD_DIGEST.set(md);
+		}
+		md.update(password, offset, length);
+		return Base64.getEncoder().encodeToString(md.digest());
+	}
+	
 	public AuthLoginResult tryCheckinAccount(L2LoginClient client, InetAddress address, AccountInfo info) {
 		if (info.getAccessLevel() < 0) {
 		    if (info.getAccessLevel() == server().autoCreateAccountsAccessLevel()) {
@@ -327,9 +407,62 @@ public class LoginController {
 		if (client != null) {
 			return client.getSessionKey();
 		}
+		
+		final var session = _handedOffSessions.get(account);
+		if (session != null) {
+			if (session.expiration() > System.currentTimeMillis()) {
+				return session.key();
+			}
+			_handedOffSessions.remove(account);
+		}
 		return null;
 	}
 	
+	/**
+	 * Gets the session keys of the authenticated clients, to hand them over to a new login server process.
+	 * @return the session keys and their expiration timestamp in milliseconds, by account
+	 */
+	public Map<String, HandedOffSession> getAuthedSessions() {
+		final Map<String, HandedOffSession> sessions = new HashMap<>();
+		for (var entry : _loginServerClients.entrySet()) {
+			final var client = entry.getValue();
+			if (client.getSessionKey() != null) {
+				sessions.put(entry.getKey(), new HandedOffSession(client.getSessionKey(), client.getConnectionStartTime() + LOGIN_TIMEOUT));
+			}
+		}
+		for (var entry : _handedOffSessions.entrySet()) {
+			sessions.putIfAbsent(entry.getKey(), entry.getValue());
+		}
+		return sessions;
+	}
+	
+	/**
+	 * Adds a session key handed over by the previous login server process.
+	 * @param account the account
+	 * @param session the session key and its expiration
+	 */
+	public void addHandedOffSession(String account, HandedOffSession session) {
+		if (session.expiration() > System.currentTimeMillis()) {
+			_handedOffSessions.put(account, session);
+		}
+	}
+	
+	public void onClientConnected() {
+		_connectedClients.incrementAndGet();
+	}
+	
+	public void onClientDisconnected() {
+		_connectedClients.decrementAndGet();
+	}
+	
+	/**
+	 * Gets the number of clients connected to the login server, which are in the middle of a login.
+	 * @return the number of connected clients
+	 */
+	public int getConnectedClients() {
+		return _connectedClients.get();
+	}
+	
 	public boolean isAccountInAnyGameServer(String account) {
 		Collection<GameServerInfo> serverList = GameServerTable.getInstance().getRegisteredGameServers().values();
 		for (GameServerInfo gsi : serverList) {
@@ -352,11 +485,77 @@ public class LoginController {
 		return null;
 	}
 	
-	public void getCharactersOnAccount(String account) {
+	/**
+	 * Fills the client with the cached characters of the account, so the server list can be sent right away, then asks the game servers for fresh ones.
+	 * @param account the account
+	 * @return a future completed once every game server asked replied, never completed if the account has no authed client
+	 */
+	public CompletableFuture<Void> getCharactersOnAccount(String account) {
+		final Map<Integer, CharacterSummary> summaries;
+		synchronized (_characterSummaries) {
+			summaries = _characterSummaries.get(account);
+		}
+		
+		final Map<Integer, GameServerThread> servers = new HashMap<>();
 		Collection<GameServerInfo> serverList = GameServerTable.getInstance().getRegisteredGameServers().values();
 		for (GameServerInfo gsi : serverList) {
-			if (gsi.isAuthed()) {
-				gsi.getGameServerThread().requestCharacters(account);
+			final var status = gsi.getGameServerStatus();
+			if (status.authed() && (status.gameServerThread() != null)) {
+				final var summary = summaries != null ? summaries.get(gsi.getId()) : null;
+				if (summary != null) {
+					setCharactersOnClient(account, summary, gsi.getId());
+				}
+				servers.put(gsi.getId(), status.gameServerThread());
+			}
+		}
+		
+		final var client = _loginServerClients.get(account);
+		if (client == null) {
+			return new CompletableFuture<>();
+		}
+		
+		// Expect the replies before asking, they may come back right away
+		final var charactersReceived = client.expectCharacters(servers.keySet());
+		for (GameServerThread gst : servers.values()) {
+			gst.requestCharacters(account);
+		}
+		return charactersReceived;
+	}
+	
+	/**
+	 * Asks the game server for the characters of an account that may have changed while playing, if they are cached.<br>
+	 * The cached ones are kept until the reply replaces them, so the next login still finds them.
+	 * @param account the account
+	 * @param gst the game server the account logged out from
+	 */
+	public void refreshCharactersOnServer(String account, GameServerThread gst) {
+		synchronized (_characterSummaries) {
+			final var summaries = _characterSummaries.get(account);
+			if ((summaries == null) || !summaries.containsKey(gst.getServerId())) {
+				return;
+			}
+		}
+		gst.requestCharacters(account);
+	}
+	
+	/**
+	 * Drops the cached characters of every account on a game server.
+	 * @param serverId the game server ID
+	 */
+	public void removeCharactersOnServer(int serverId) {
+		synchronized (_characterSummaries) {
+			final var it = _characterSummaries.entrySet().iterator();
+			while (it.hasNext()) {
+				final var entry = it.next();
+				if (entry.getValue().containsKey(serverId)) {
+					final var remaining = new HashMap<>(entry.getValue());
+					remaining.remove(serverId);
+					if (remaining.isEmpty()) {
+						it.remove();
+					} else {
+						entry.setValue(Map.copyOf(remaining));
+					}
+				}
 			}
 		}
 	}
@@ -364,24 +563,38 @@ public class LoginController {
 	public boolean isLoginPossible(L2LoginClient client, int serverId) {
 		GameServerInfo gsi = GameServerTable.getInstance().getRegisteredGameServerById(serverId);
 		int access = client.getAccessLevel();
-		if ((gsi != null) && gsi.isAuthed()) {
-			boolean loginOk = ((gsi.getCurrentPlayerCount() < gsi.getMaxPlayers()) && (gsi.getStatus() != ServerStatus.STATUS_GM_ONLY)) || (access > 0);
+		final var status = gsi != null ? gsi.getGameServerStatus() : null;
+		if ((status != null) && status.authed()) {
+			boolean loginOk = ((status.freeSlots() > 0) && (status.effectiveStatus() != ServerStatus.STATUS_GM_ONLY)) || (access > 0);
 			
-			if (loginOk && (client.getLastServer() != serverId)) {
-				try (var con = ConnectionFactory.getInstance().getConnection();
-					var ps = con.prepareStatement(ACCOUNT_LAST_SERVER_UPDATE)) {
-					ps.setInt(1, serverId);
-					ps.setString(2, client.getAccount());
-					ps.executeUpdate();
-				} catch (Exception ex) {
-					LOG.warn("There has been an error setting last server for account {}!", client.getAccount(), ex);
-				}
+			if (loginOk) {
+				updateLastServer(client, serverId);
 			}
 			return loginOk;
 		}
 		return false;
 	}
 	
+	/**
+	 * Stores the game server the account logs in to, if it's not the last one.
+	 * @param client the client
+	 * @param serverId the game server ID
+	 */
+	public void updateLastServer(L2LoginClient client, int serverId) {
+		if (client.getLastServer() == serverId) {
+			return;
+		}
+		
+		try (var con = ConnectionFactory.getInstance().getConnection();
+			var ps = con.prepareStatement(ACCOUNT_LAST_SERVER_UPDATE)) {
+			ps.setInt(1, serverId);
+			ps.setString(2, client.getAccount());
+			ps.executeUpdate();
+		} catch (Exception ex) {
+			LOG.warn("There has been an error setting last server for account {}!", client.getAccount(), ex);
+		}
+	}
+	
 	public void setAccountAccessLevel(String account, int banLevel) {
 		try (var con = ConnectionFactory.getInstance().getConnection();
 			var ps = con.prepareStatement(ACCOUNT_ACCESS_LEVEL_UPDATE)) {
@@ -409,17 +622,38 @@ public class LoginController {
 	}
 	
 	public void setCharactersOnServer(String account, int charsNum, long[] timeToDel, int serverId) {
+		final var summary = new CharacterSummary(charsNum, timeToDel);
+		synchronized (_characterSummaries) {
+			final var summaries = _characterSummaries.get(account);
+			final Map<Integer, CharacterSummary> updated = summaries != null ? new HashMap<>(summaries) : new HashMap<>(2);
+			updated.put(serverId, summary);
+			_characterSummaries.put(account, Map.copyOf(updated));
+		}
+		
+		setCharactersOnClient(account, summary, serverId);
+		
+		final var client = _loginServerClients.get(account);
+		if (client != null) {
+			client.onCharactersReceived(serverId);
+		}
+	}
+	
+	private void setCharactersOnClient(String account, CharacterSummary summary, int serverId) {
 		final var client = _loginServerClients.get(account);
 		if (client == null) {
 			return;
 		}
 		
-		if (charsNum > 0) {
-			client.setCharsOnServ(serverId, charsNum);
+		if (summary.chars() > 0) {
+			client.setCharsOnServ(serverId, summary.chars());
+		} else if (client.getCharsOnServ() != null) {
+			client.getCharsOnServ().remove(serverId);
 		}
 		
-		if (timeToDel.length > 0) {
-			client.serCharsWaitingDelOnServ(serverId, timeToDel);
+		if (summary.timeToDel().length > 0) {
+			client.serCharsWaitingDelOnServ(serverId, summary.timeToDel());
+		} else if (client.getCharsWaitingDelOnServ() != null) {
+			client.getCharsWaitingDelOnServ().remove(serverId);
 		}
 	}
 	
@@ -428,7 +662,7 @@ public class LoginController {
 	 * @return a scrambled keypair
 	 */
 	public ScrambledKeyPair getScrambledRSAKeyPair() {
-		return _keyPairs[Rnd.nextInt(10)];
+		return _keyPairs.get();
 	}
 	
 	/**
@@ -531,6 +765,22 @@ public class LoginController {
 		}
 	}
 	
+	/**
+	 * Session key handed over between login server processes.
+	 * @param key the session key
+	 * @param expiration the timestamp in milliseconds when the session key expires
+	 */
+	public record HandedOffSession(SessionKey key, long expiration) {
+	}
+	
+	/**
+	 * Characters of an account on a game server.
+	 * @param chars the number of characters
+	 * @param timeToDel the deletion time of the characters waiting to be deleted
+	 */
+	public record CharacterSummary(int chars, long[] timeToDel) {
+	}
+	
 	public enum AuthLoginResult {
 		INVALID_PASSWORD,
 		ACCOUNT_INACTIVE,
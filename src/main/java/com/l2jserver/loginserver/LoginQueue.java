@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import static com.l2jserver.loginserver.config.Configuration.server;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import com.l2jserver.loginserver.GameServerTable.GameServerInfo.GameServerStatus;
+import com.l2jserver.loginserver.network.L2LoginClient;
+import com.l2jserver.loginserver.network.gameserverpackets.ServerStatus;
+import com.l2jserver.loginserver.network.serverpackets.PlayFail.PlayFailReason;
+import com.l2jserver.loginserver.network.serverpackets.PlayOk;
+
+/**
+ * Holds the clients logging in to a full game server instead of refusing them, so they don't reconnect and log in again and again.<br>
+ * Each game server has its own FIFO queue, the first client is let in when a player logs out of the game server, and refused once it waited the maximum queue time.<br>
+ * The clients let in, from the queue or directly, count against the free slots until the game server reports them in game, so a slot is only given once.
+ * @version 2.6.5.2
+ */
+public final class LoginQueue {
+	
+	/** Time in milliseconds between the checks of the queues. */
+	private static final long CHECK_INTERVAL = 1000;
+	
+	private final Map<Integer, ServerQueue> _queues = new ConcurrentHashMap<>();
+	
+	protected LoginQueue() {
+		final var executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final var thread = new Thread(r, "LoginQueue");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this::check, CHECK_INTERVAL, CHECK_INTERVAL, MILLISECONDS);
+	}
+	
+	/**
+	 * Lets a client in right away if no client is waiting for the game server and it has a free slot, the clients let in that didn't reach it yet included.<br>
+	 * The client counts against the free slots until the game server reports it in game.
+	 * @param client the client
+	 * @param serverId the game server ID
+	 * @return {@code true} if the client is let in, {@code false} if it must be queued or refused
+	 */
+	public boolean tryAdmitDirect(L2LoginClient client, int serverId) {
+		final var gsi = GameServerTable.getInstance().getRegisteredGameServerById(serverId);
+		if (gsi == null) {
+			return false;
+		}
+		
+		final var status = gsi.getGameServerStatus();
+		if (!status.authed() || (status.effectiveStatus() == ServerStatus.STATUS_GM_ONLY)) {
+			return false;
+		}
+		
+		final var queue = _queues.computeIfAbsent(serverId, id -> new ServerQueue());
+		synchronized (queue) {
+			// New clients wait behind the clients already queued
+			if (!queue._waiting.isEmpty() || (getFreeSlots(status, queue) <= 0)) {
+				return false;
+			}
+			queue._admitted.put(client.getAccount(), System.currentTimeMillis());
+		}
+		LoginController.getInstance().updateLastServer(client, serverId);
+		return true;
+	}
+	
+	/**
+	 * Queues a client logging in to a full game server.
+	 * @param client the client
+	 * @param serverId the game server ID
+	 * @return {@code true} if the client is queued, {@code false} if it must be refused
+	 */
+	public boolean enqueue(L2LoginClient client, int serverId) {
+		if (server().getLoginQueueTime() <= 0) {
+			return false;
+		}
+		
+		final var gsi = GameServerTable.getInstance().getRegisteredGameServerById(serverId);
+		if (gsi == null) {
+			return false;
+		}
+		
+		final var status = gsi.getGameServerStatus();
+		if (!status.authed() || (status.effectiveStatus() == ServerStatus.STATUS_GM_ONLY)) {
+			return false;
+		}
+		
+		final var queue = _queues.computeIfAbsent(serverId, id -> new ServerQueue());
+		synchronized (queue) {
+			if (queue._waiting.stream().anyMatch(login -> login.client() == client)) {
+				// Already waiting, the client asked again
+				return true;
+			}
+			if (queue._waiting.size() >= server().getLoginQueueSize()) {
+				return false;
+			}
+			queue._waiting.add(new QueuedLogin(client, System.currentTimeMillis()));
+		}
+		admit(serverId, queue);
+		return true;
+	}
+	
+	/**
+	 * Called when the game server reports a player in game.
+	 * @param serverId the game server ID
+	 * @param account the account
+	 */
+	public void onPlayerInGame(int serverId, String account) {
+		final var queue = _queues.get(serverId);
+		if (queue != null) {
+			synchronized (queue) {
+				queue._admitted.remove(account);
+			}
+		}
+	}
+	
+	/**
+	 * Called when a player logs out of the game server, freeing a slot.
+	 * @param serverId the game server ID
+	 */
+	public void onPlayerLogout(int serverId) {
+		final var queue = _queues.get(serverId);
+		if (queue != null) {
+			admit(serverId, queue);
+		}
+	}
+	
+	/**
+	 * Gets the number of clients waiting to log in to any game server.
+	 * @return the number of waiting clients
+	 */
+	public int getWaiting() {
+		int waiting = 0;
+		for (ServerQueue queue : _queues.values()) {
+			synchronized (queue) {
+				waiting += queue._waiting.size();
+			}
+		}
+		return waiting;
+	}
+	
+	/**
+	 * Lets in as many waiting clients as there are free slots on the game server.
+	 * @param serverId the game server ID
+	 * @param queue the queue of the game server
+	 */
+	private void admit(int serverId, ServerQueue queue) {
+		final var gsi = GameServerTable.getInstance().getRegisteredGameServerById(serverId);
+		if (gsi == null) {
+			return;
+		}
+		
+		final var status = gsi.getGameServerStatus();
+		if (!status.authed()) {
+			return;
+		}
+		
+		synchronized (queue) {
+			int free = getFreeSlots(status, queue);
+			while ((free > 0) && !queue._waiting.isEmpty()) {
+				final var client = queue._waiting.poll().client();
+				if (client.getConnection().isClosed()) {
+					continue;
+				}
+				
+				queue._admitted.put(client.getAccount(), System.currentTimeMillis());
+				free--;
+				// Replies are sent from the packet queue of the client
+				client.getPacketQueue().execute(() -> {
+					LoginController.getInstance().updateLastServer(client, serverId);
+					client.setJoinedGS(true);
+					client.sendPacket(new PlayOk(client.getSessionKey()));
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Gets the free slots of a game server, minus the clients let in that didn't reach it yet, must be called holding the queue lock.
+	 * @param status the game server status
+	 * @param queue the queue of the game server
+	 * @return the free slots
+	 */
+	private static int getFreeSlots(GameServerStatus status, ServerQueue queue) {
+		return status.freeSlots() - queue._admitted.size();
+	}
+	
+	/**
+	 * Refuses the clients that waited too long or whose game server went down, forgets the clients let in that never reached the game server, and lets in clients if slots are free.
+	 */
+	private void check() {
+		final long now = System.currentTimeMillis();
+		final long queueTime = server().getLoginQueueTime() * 1000L;
+		_queues.forEach((serverId, queue) -> {
+			final var gsi = GameServerTable.getInstance().getRegisteredGameServerById(serverId);
+			final boolean up = (gsi != null) && gsi.isAuthed();
+			synchronized (queue) {
+				queue._admitted.values().removeIf(time -> (now - time) > LoginController.LOGIN_TIMEOUT);
+				
+				final var it = queue._waiting.iterator();
+				while (it.hasNext()) {
+					final var login = it.next();
+					final var client = login.client();
+					if (client.getConnection().isClosed()) {
+						it.remove();
+					} else if (!up || ((now - login.time()) > queueTime)) {
+						it.remove();
+						client.getPacketQueue().execute(() -> client.close(PlayFailReason.REASON_SERVER_OVERLOADED));
+					}
+				}
+			}
+			admit(serverId, queue);
+		});
+	}
+	
+	private static final class ServerQueue {
+		private final Deque<QueuedLogin> _waiting = new ArrayDeque<>();
+		
+		/** Accounts let in that didn't reach the game server yet, with the time they were let in. */
+		private final Map<String, Long> _admitted = new HashMap<>();
+	}
+	
+	private record QueuedLogin(L2LoginClient client, long time) {
+	}
+	
+	public static LoginQueue getInstance() {
+		return SingletonHolder.INSTANCE;
+	}
+	
+	private static class SingletonHolder {
+		protected static final LoginQueue INSTANCE = new LoginQueue();
+	}
+}
@@ -26,13 +26,18 @@ import static com.l2jserver.loginserver.config.Configuration.telnet;
 
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.lang.management.ManagementFactory;
+import java.net.BindException;
 import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.l2jserver.commons.UPnPService;
 import com.l2jserver.commons.database.ConnectionFactory;
+import com.l2jserver.loginserver.StartupStages.StageException;
 import com.l2jserver.loginserver.mail.MailSystem;
 import com.l2jserver.loginserver.network.L2LoginClient;
 import com.l2jserver.loginserver.network.L2LoginPacketHandler;
@@ -52,59 +57,145 @@ public final class LoginServer {
 	
 	private static final String BANNED_IPS = "/config/banned_ip.cfg";
 	
+	/** Command line argument that runs the class data sharing training run instead of the server. */
+	private static final String TRAINING_RUN = "--training-run";
+	
+	/** Time in milliseconds, on top of the drain time, the successor of a handoff waits for the client port. */
+	private static final long HANDOFF_BIND_TIMEOUT = 60000;
+	
+	private static final long HANDOFF_BIND_RETRY = 100;
+	
+	/** Classes used once the server is up that the training run loads without initializing, as they need the database or open sockets. */
+	private static final String[] TRAINING_CLASSES = {
+		"com.l2jserver.loginserver.GameServerTable",
+		"com.l2jserver.loginserver.GameServerThread",
+		"com.l2jserver.loginserver.GameServerListener",
+		"com.l2jserver.loginserver.SelectorHelper",
+		"com.l2jserver.loginserver.network.serverpackets.ServerList",
+		"com.l2jserver.loginserver.network.gameserverpackets.BlowFishKey",
+		"com.l2jserver.loginserver.network.gameserverpackets.GameServerAuth",
+		"com.l2jserver.loginserver.network.gameserverpackets.PlayerAuthRequest",
+		"com.l2jserver.loginserver.network.gameserverpackets.ServerStatus",
+		"com.l2jserver.loginserver.status.Status",
+		"com.l2jserver.mmocore.SelectorThread",
+		"com.l2jserver.mmocore.MMOConnection",
+		"com.l2jserver.commons.database.ConnectionFactory"
+	};
+	
 	private static LoginServer _instance;
 	
 	private GameServerListener _gameServerListener;
 	
 	private SelectorThread<L2LoginClient> _selectorThread;
 	
+	private SelectorHelper _selectorHelper;
+	
+	private ProxyProtocolListener _proxyListener;
+	
 	private Status _statusServer;
 	
 	public static void main(String[] args) {
-		new LoginServer();
+		if (Arrays.asList(args).contains(TRAINING_RUN)) {
+			trainingRun();
+			return;
+		}
+		new LoginServer(LoginServerHandoff.isSuccessor(args));
+	}
+	
+	/**
+	 * Loads the classes used at startup and while serving logins, then exits.<br>
+	 * Meant to be run with {@code -XX:ArchiveClassesAtExit} to create the class data sharing archive used by the start scripts.<br>
+	 * Neither the database nor the network are used.
+	 */
+	private static void trainingRun() {
+		final long start = System.currentTimeMillis();
+		try {
+			// Owner configuration proxies.
+			server().getPort();
+			mmo().getSleepTime();
+			database().getURL();
+			email().isEnabled();
+			telnet().isEnabled();
+			
+			new SelectorConfig();
+			new L2LoginPacketHandler();
+			LoginController.getInstance().awaitKeyPairs();
+			LoginWarmup.run();
+			
+			final var classLoader = LoginServer.class.getClassLoader();
+			for (String className : TRAINING_CLASSES) {
+				try {
+					Class.forName(className, false, classLoader);
+				} catch (ClassNotFoundException ex) {
+					LOG.warn("Training run class {} not found!", className);
+				}
+			}
+		} catch (Exception ex) {
+			LOG.error("There has been an error during the training run!", ex);
+			System.exit(1);
+		}
+		LOG.info("Training run finished in {} ms.", System.currentTimeMillis() - start);
+		System.exit(0);
 	}
 	
 	public static LoginServer getInstance() {
 		return _instance;
 	}
 	
-	private LoginServer() {
+	private LoginServer(boolean successor) {
 		_instance = this;
 		
+		final var stages = new StartupStages();
+		
 		// Prepare Database
-		ConnectionFactory.builder() //
+		final var connectionFactory = stages.run("Database", () -> ConnectionFactory.builder() //
 			.withUrl(database().getURL()) //
 			.withUser(database().getUser()) //
 			.withPassword(database().getPassword()) //
 			.withMaxIdleTime(database().getMaxIdleTime()) //
 			.withMaxPoolSize(database().getMaxConnections()) //
-			.build();
+			.build());
 		
-		LoginController.getInstance();
+		final var loginController = stages.run("Login Controller", LoginController::getInstance);
 		
-		GameServerTable.getInstance();
+		final var gameServerTable = stages.run("Game Server Table", GameServerTable::getInstance, connectionFactory);
 		
-		loadBanFile();
+		final var banFile = stages.run("Ban File", this::loadBanFile, loginController);
 		
-		if (email().isEnabled()) {
-			MailSystem.getInstance();
-		}
+		final var mailSystem = email().isEnabled() ? stages.run("Mail System", MailSystem::getInstance) : CompletableFuture.completedFuture(null);
+		
+		final var loginClientKeys = stages.run("Login Client RSA Keys", () -> LoginController.getInstance().awaitKeyPairs(), loginController);
+		
+		final var warmUp = server().isWarmUpEnabled() ? stages.run("JIT Warm-up", LoginWarmup::run, loginClientKeys) : CompletableFuture.completedFuture(null);
+		
+		final var gameServerKeys = stages.run("Game Server RSA Keys", () -> GameServerTable.getInstance().awaitKeyPairs(), gameServerTable);
 		
 		final SelectorConfig sc = new SelectorConfig();
 		sc.MAX_READ_PER_PASS = mmo().getMaxReadPerPass();
 		sc.MAX_SEND_PER_PASS = mmo().getMaxSendPerPass();
 		sc.SLEEP_TIME = mmo().getSleepTime();
 		sc.HELPER_BUFFER_COUNT = mmo().getHelperBufferCount();
+		sc.HELPER_BUFFER_SIZE = mmo().getHelperBufferSize();
+		sc.READ_BUFFER_SIZE = mmo().getReadBufferSize();
+		sc.WRITE_BUFFER_SIZE = mmo().getWriteBufferSize();
+		sc.TCP_NODELAY = mmo().isTcpNoDelay();
 		
 		final L2LoginPacketHandler loginPacketHandler = new L2LoginPacketHandler();
-		final SelectorHelper selectorHelper = new SelectorHelper();
 		try {
-			_selectorThread = new SelectorThread<>(sc, selectorHelper, loginPacketHandler, selectorHelper, selectorHelper);
+			_proxyListener = server().isProxyProtocolEnabled() ? new ProxyProtocolListener() : null;
+		} catch (Exception ex) {
+			LOG.error("Failed to start the PROXY protocol listener!", ex);
+			System.exit(1);
+		}
+		_selectorHelper = new SelectorHelper(_proxyListener);
+		try {
+			_selectorThread = new SelectorThread<>(sc, _selectorHelper, loginPacketHandler, _selectorHelper, _selectorHelper);
 		} catch (Exception ex) {
 			LOG.error("Failed to open Selector!", ex);
 			System.exit(1);
 		}
 		
+		awaitStages(stages, gameServerKeys);
 		try {
 			_gameServerListener = new GameServerListener();
 			_gameServerListener.start();
@@ -114,15 +205,8 @@ public final class LoginServer {
 			System.exit(1);
 		}
 		
-		if (telnet().isEnabled()) {
-			try {
-				_statusServer = new Status();
-				_statusServer.start();
-			} catch (Exception ex) {
-				LOG.warn("Failed to start the Telnet Server!", ex);
-			}
-		} else {
-			LOG.info("Telnet server is currently disabled.");
+		if (!successor) {
+			startTelnet();
 		}
 		
 		InetAddress bindAddress = null;
@@ -133,20 +217,103 @@ public final class LoginServer {
 				LOG.warn("The Login Server bind address is invalid, using all avaliable IPs!", ex);
 			}
 		}
+		awaitStages(stages, connectionFactory, gameServerTable, banFile, mailSystem, loginClientKeys, warmUp);
 		try {
-			_selectorThread.openServerSocket(bindAddress, server().getPort());
+			if (successor) {
+				// The previous process releases the client port only once it sees this one is ready.
+				LoginServerHandoff.markReady();
+			}
+			openServerSocket(bindAddress, successor);
+			if (successor) {
+				// The state file is written before the port is released, restore it before accepting clients.
+				LoginServerHandoff.readState();
+			} else if (server().isLoginRestartHandoffEnabled()) {
+				LoginServerHandoff.markReady();
+			}
 			_selectorThread.start();
+			if (_proxyListener != null) {
+				_proxyListener.start();
+			}
 			LOG.info("Login Server is now listening on {}:{}.", server().getHost(), server().getPort());
 		} catch (Exception ex) {
 			LOG.error("Failed to open server socket!", ex);
 			System.exit(1);
 		}
 		
+		if (successor) {
+			// The telnet port is released along with the client port, once the previous process exits.
+			startTelnet();
+		}
+		
+		stages.report();
+		LOG.info("Login Server started {} ms after the JVM started.", ManagementFactory.getRuntimeMXBean().getUptime());
+		
 		if (server().isUPnPEnabled()) {
 			UPnPService.getInstance().load(server().getPort(), "L2J Login Server");
 		}
 	}
 	
+	private void startTelnet() {
+		if (telnet().isEnabled()) {
+			try {
+				_statusServer = new Status();
+				_statusServer.start();
+			} catch (Exception ex) {
+				LOG.warn("Failed to start the Telnet Server!", ex);
+			}
+		} else {
+			LOG.info("Telnet server is currently disabled.");
+		}
+	}
+	
+	/**
+	 * Waits for the given startup stages, exits if any of them failed.
+	 * @param stages the startup stages
+	 * @param awaited the stages to wait for
+	 */
+	private static void awaitStages(StartupStages stages, CompletableFuture<?>... awaited) {
+		try {
+			stages.await(awaited);
+		} catch (StageException ex) {
+			LOG.error("Startup stage {} failed!", ex.getStage(), ex.getCause());
+			System.exit(1);
+		} catch (Exception ex) {
+			LOG.error("Failed waiting for the startup stages!", ex);
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Opens the client port.<br>
+	 * Behind a load balancer the PROXY protocol listener owns it, and the selector listens on a loopback port for the relayed connections.<br>
+	 * The successor of a handoff retries until the previous process has drained and released the port.
+	 * @param bindAddress the bind address, {@code null} for all addresses
+	 * @param successor if this process is taking over from another one
+	 * @throws Exception if the port couldn't be opened
+	 */
+	private void openServerSocket(InetAddress bindAddress, boolean successor) throws Exception {
+		if (_proxyListener != null) {
+			_selectorThread.openServerSocket(InetAddress.getLoopbackAddress(), _proxyListener.getRelayPort());
+		}
+		
+		final long deadline = System.currentTimeMillis() + (server().getLoginRestartDrainTime() * 1000L) + HANDOFF_BIND_TIMEOUT;
+		while (true) {
+			try {
+				if (_proxyListener != null) {
+					_proxyListener.open(bindAddress, server().getPort());
+				} else {
+					_selectorThread.openServerSocket(bindAddress, server().getPort());
+				}
+				return;
+			} catch (BindException ex) {
+				if (!successor || (System.currentTimeMillis() > deadline)) {
+					throw ex;
+				}
+				Thread.sleep(HANDOFF_BIND_RETRY);
+			}
+		}
+	}
+	
 	public Status getStatusServer() {
 		return _statusServer;
 	}
@@ -216,6 +383,32 @@ public final class LoginServer {
 	}
 	
 	public void shutdown(boolean restart) {
+		if (server().isLoginRestartHandoffEnabled()) {
+			if (restart && handOff()) {
+				Runtime.getRuntime().exit(LoginServerHandoff.EXIT_CODE);
+			}
+			if (!restart) {
+				LoginServerHandoff.removePidFile();
+			}
+		}
 		Runtime.getRuntime().exit(restart ? 2 : 0);
 	}
+	
+	/**
+	 * Hands the login server over to a new process.
+	 * @return {@code true} if the new process took over, {@code false} if a regular restart must be done
+	 */
+	private boolean handOff() {
+		if (!LoginServerHandoff.startSuccessor()) {
+			return false;
+		}
+		
+		// The new process is listening for game servers, the connected ones reconnect to it once this one exits.
+		_gameServerListener.interrupt();
+		_gameServerListener.close();
+		_selectorHelper.drain();
+		LoginServerHandoff.drain(server().getLoginRestartDrainTime() * 1000L);
+		LoginServerHandoff.writeState();
+		return true;
+	}
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.l2jserver.loginserver.LoginController.HandedOffSession;
+
+/**
+ * Hands the login server over to a new process on scheduled restarts.<br>
+ * It shortens the outage of a restart without removing it, new clients are refused while the current process drains and until the successor binds the client port.<br>
+ * The current process starts its successor and waits until it's ready, meaning it's listening for game servers (SO_REUSEPORT) and only waits for the client port.<br>
+ * Then the current process stops accepting connections, lets the logins in progress finish, writes the session keys and bans to the state file and exits, releasing the client port.<br>
+ * The successor takes over the client port and reads the state file, so the players that already selected a game server can still enter it.<br>
+ * The PID file always holds the PID of the process the loop script must follow.
+ * @version 2.6.5.2
+ */
+final class LoginServerHandoff {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(LoginServerHandoff.class);
+	
+	/** Command line argument telling the login server it's taking over from another process. */
+	static final String SUCCESSOR = "--handoff";
+	
+	/** Exit code telling the loop script a successor took over. */
+	static final int EXIT_CODE = 3;
+	
+	private static final Path PID_FILE = Path.of("login.pid");
+	
+	private static final Path STATE_FILE = Path.of("data", "handoff.dat");
+	
+	private static final int STATE_VERSION = 1;
+	
+	private static final long POLL_INTERVAL = 100;
+	
+	/** Time in milliseconds the successor has to start before the handoff is cancelled. */
+	private static final long SUCCESSOR_TIMEOUT = 120000;
+	
+	private LoginServerHandoff() {
+		// Do nothing.
+	}
+	
+	/**
+	 * Checks if this process was started to take over from another one.
+	 * @param args the command line arguments
+	 * @return {@code true} if this process is a successor
+	 */
+	static boolean isSuccessor(String[] args) {
+		return Arrays.asList(args).contains(SUCCESSOR);
+	}
+	
+	/**
+	 * Starts the successor process with the same command line, and waits until it's ready to take over.
+	 * @return {@code true} if the successor is ready, {@code false} if it couldn't be started
+	 */
+	static boolean startSuccessor() {
+		final var info = ProcessHandle.current().info();
+		if (info.command().isEmpty() || info.arguments().isEmpty()) {
+			LOG.warn("Unable to get the command line of the Login Server, cannot hand over!");
+			return false;
+		}
+		
+		final List<String> command = new ArrayList<>();
+		command.add(info.command().get());
+		command.addAll(Arrays.asList(info.arguments().get()));
+		if (!command.contains(SUCCESSOR)) {
+			command.add(SUCCESSOR);
+		}
+		
+		final Process successor;
+		try {
+			successor = new ProcessBuilder(command).inheritIO().start();
+		} catch (IOException ex) {
+			LOG.warn("Unable to start the new Login Server process!", ex);
+			return false;
+		}
+		
+		LOG.info("Started new Login Server process {}, waiting for it to be ready.", successor.pid());
+		final long deadline = System.currentTimeMillis() + SUCCESSOR_TIMEOUT;
+		final var pid = String.valueOf(successor.pid());
+		while (System.currentTimeMillis() < deadline) {
+			if (!successor.isAlive()) {
+				LOG.warn("New Login Server process {} exited with code {}!", successor.pid(), successor.exitValue());
+				return false;
+			}
+			
+			try {
+				if (Files.exists(PID_FILE) && pid.equals(Files.readString(PID_FILE, US_ASCII).trim())) {
+					return true;
+				}
+			} catch (IOException ex) {
+				// The PID file is being written.
+			}
+			
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException ex) {
+				break;
+			}
+		}
+		LOG.warn("New Login Server process {} is not ready in time, cancelling the handoff!", successor.pid());
+		successor.destroy();
+		return false;
+	}
+	
+	/**
+	 * Waits for the logins in progress to finish.
+	 * @param drainTime the maximum time to wait in milliseconds
+	 */
+	static void drain(long drainTime) {
+		final long deadline = System.currentTimeMillis() + drainTime;
+		try {
+			while ((LoginController.getInstance().getConnectedClients() > 0) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(POLL_INTERVAL);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		LOG.info("Handing over with {} logins still in progress.", LoginController.getInstance().getConnectedClients());
+	}
+	
+	/**
+	 * Writes the PID of this process to the PID file, telling the previous process and the loop script this one is ready.
+	 */
+	static void markReady() {
+		try {
+			Files.writeString(PID_FILE, String.valueOf(ProcessHandle.current().pid()), US_ASCII);
+		} catch (IOException ex) {
+			LOG.warn("Unable to write the PID file {}!", PID_FILE, ex);
+		}
+	}
+	
+	/**
+	 * Removes the PID file, telling the loop script the login server was stopped on purpose.
+	 */
+	static void removePidFile() {
+		try {
+			Files.deleteIfExists(PID_FILE);
+		} catch (IOException ex) {
+			LOG.warn("Unable to delete the PID file {}!", PID_FILE, ex);
+		}
+	}
+	
+	/**
+	 * Writes the session keys and bans of this process to the state file.
+	 */
+	static void writeState() {
+		final var sessions = LoginController.getInstance().getAuthedSessions();
+		final var bans = new HashMap<>(LoginController.getInstance().getBannedIps());
+		try {
+			Files.createDirectories(STATE_FILE.getParent());
+			final var tmp = STATE_FILE.resolveSibling(STATE_FILE.getFileName() + ".tmp");
+			try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(STATE_VERSION);
+				out.writeInt(sessions.size());
+				for (var entry : sessions.entrySet()) {
+					final var key = entry.getValue().key();
+					out.writeUTF(entry.getKey());
+					out.writeInt(key.loginOkID1);
+					out.writeInt(key.loginOkID2);
+					out.writeInt(key.playOkID1);
+					out.writeInt(key.playOkID2);
+					out.writeLong(entry.getValue().expiration());
+				}
+				out.writeInt(bans.size());
+				for (var entry : bans.entrySet()) {
+					final byte[] address = entry.getKey().getAddress();
+					out.writeByte(address.length);
+					out.write(address);
+					out.writeLong(entry.getValue());
+				}
+			}
+			try {
+				Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+			} catch (UnsupportedOperationException ex) {
+				// Not a POSIX file system.
+			}
+			Files.move(tmp, STATE_FILE, REPLACE_EXISTING, ATOMIC_MOVE);
+			LOG.info("Handed over {} session keys and {} banned IPs.", sessions.size(), bans.size());
+		} catch (IOException ex) {
+			LOG.warn("Unable to write the handoff state file {}!", STATE_FILE, ex);
+		}
+	}
+	
+	/**
+	 * Reads the session keys and bans handed over by the previous process, then deletes the state file.
+	 */
+	static void readState() {
+		if (!Files.exists(STATE_FILE)) {
+			LOG.warn("There is no handoff state file {}!", STATE_FILE);
+			return;
+		}
+		
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(STATE_FILE)))) {
+			if (in.readInt() != STATE_VERSION) {
+				LOG.warn("Unknown handoff state file {} version!", STATE_FILE);
+				return;
+			}
+			
+			final int sessions = in.readInt();
+			for (int i = 0; i < sessions; i++) {
+				final String account = in.readUTF();
+				final var key = new SessionKey(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+				LoginController.getInstance().addHandedOffSession(account, new HandedOffSession(key, in.readLong()));
+			}
+			
+			final int bans = in.readInt();
+			for (int i = 0; i < bans; i++) {
+				final byte[] address = new byte[in.readUnsignedByte()];
+				in.readFully(address);
+				LoginController.getInstance().getBannedIps().putIfAbsent(InetAddress.getByAddress(address), in.readLong());
+			}
+			LOG.info("Took over {} session keys and {} banned IPs.", sessions, bans);
+		} catch (IOException ex) {
+			LOG.warn("Unable to read the handoff state file {}!", STATE_FILE, ex);
+		}
+		
+		try {
+			Files.delete(STATE_FILE);
+		} catch (IOException ex) {
+			LOG.warn("Unable to delete the handoff state file {}!", STATE_FILE, ex);
+		}
+	}
+}
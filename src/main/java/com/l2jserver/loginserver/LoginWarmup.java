@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import static com.l2jserver.loginserver.config.Configuration.server;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.security.spec.RSAKeyGenParameterSpec.F4;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.l2jserver.commons.util.Rnd;
+import com.l2jserver.loginserver.model.AccountInfo;
+import com.l2jserver.loginserver.network.L2LoginClient;
+import com.l2jserver.loginserver.network.L2LoginClient.LoginClientState;
+import com.l2jserver.loginserver.network.L2LoginPacketHandler;
+import com.l2jserver.loginserver.network.clientpackets.L2LoginClientPacket;
+import com.l2jserver.loginserver.network.clientpackets.RequestAuthLogin;
+import com.l2jserver.loginserver.network.clientpackets.RequestServerList;
+import com.l2jserver.loginserver.network.serverpackets.GGAuth;
+import com.l2jserver.loginserver.network.serverpackets.Init;
+import com.l2jserver.loginserver.network.serverpackets.L2LoginServerPacket;
+import com.l2jserver.loginserver.network.serverpackets.LoginOk;
+import com.l2jserver.loginserver.network.serverpackets.PlayOk;
+import com.l2jserver.loginserver.security.crypt.BlowfishEngine;
+
+/**
+ * Warms up the login pipeline before the client port is opened, so the first logins after a restart don't pay for class loading and JIT compilation.<br>
+ * Synthetic Init, AuthGameGuard, RequestAuthLogin and RequestServerList flows are driven through the client codec, the packet handler, the packet parsers, the RSA decryption and the password hashing, against an in-memory account.<br>
+ * Nothing is sent over the network and the database is not used.
+ * @version 2.6.5.2
+ */
+final class LoginWarmup {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(LoginWarmup.class);
+	
+	private static final int BATCH_SIZE = 200;
+	
+	/** Number of consecutive batches without JIT activity after which compilation is considered settled. */
+	private static final int SETTLED_BATCHES = 3;
+	
+	private static final int HEADER_SIZE = 2;
+	
+	private static final String LOGIN = "warmup";
+	
+	private static final String PASSWORD = "warmup";
+	
+	private final ByteBuffer _buf = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+	
+	private final L2LoginPacketHandler _packetHandler = new L2LoginPacketHandler();
+	
+	private final AccountInfo _account;
+	
+	private LoginWarmup() throws Exception {
+		_account = new AccountInfo(LOGIN, LoginController.getInstance().hashPassword(PASSWORD), 0, 1);
+	}
+	
+	/**
+	 * Runs synthetic logins until JIT compilation settles or the configured time is over.
+	 */
+	static void run() {
+		final long start = System.currentTimeMillis();
+		final long deadline = start + (server().getWarmUpTime() * 1000L);
+		final var compilation = ManagementFactory.getCompilationMXBean();
+		final boolean monitored = (compilation != null) && compilation.isCompilationTimeMonitoringSupported();
+		
+		int logins = 0;
+		try {
+			final var warmup = new LoginWarmup();
+			int settled = 0;
+			long compilationTime = monitored ? compilation.getTotalCompilationTime() : 0;
+			while ((settled < SETTLED_BATCHES) && (System.currentTimeMillis() < deadline)) {
+				for (int i = 0; i < BATCH_SIZE; i++) {
+					warmup.login();
+				}
+				logins += BATCH_SIZE;
+				
+				if (monitored) {
+					final long time = compilation.getTotalCompilationTime();
+					settled = time == compilationTime ? settled + 1 : 0;
+					compilationTime = time;
+				}
+			}
+		} catch (Exception ex) {
+			LOG.warn("There has been an error warming up the login pipeline!", ex);
+		}
+		LOG.info("Warmed up the login pipeline with {} synthetic logins in {} ms.", logins, System.currentTimeMillis() - start);
+	}
+	
+	private void login() throws Exception {
+		// Not connected, only the codec and the state of the client are used.
+		final var client = new L2LoginClient(null);
+		final var clientCrypt = new BlowfishEngine(client.getBlowfishKey());
+		
+		send(client, new Init(client));
+		
+		_buf.clear();
+		_buf.position(HEADER_SIZE);
+		_buf.put((byte) 0x07);
+		_buf.putInt(client.getSessionId());
+		_buf.putInt(0).putInt(0).putInt(0).putInt(0);
+		receive(client, clientCrypt);
+		client.setState(LoginClientState.AUTHED_GG);
+		send(client, new GGAuth(client.getSessionId()));
+		
+		_buf.clear();
+		_buf.position(HEADER_SIZE);
+		_buf.put((byte) 0x00);
+		_buf.put(encryptCredentials(client));
+		final var requestAuthLogin = (RequestAuthLogin) receive(client, clientCrypt);
+		if ((requestAuthLogin == null) || (requestAuthLogin.decryptCredentials(client.getRSAPrivateKey()) != null)) {
+			throw new IllegalStateException("Synthetic credentials could not be decrypted!");
+		}
+		if (!_account.checkPassHash(requestAuthLogin.getPasswordHash())) {
+			throw new IllegalStateException("Synthetic credentials do not match!");
+		}
+		final var sessionKey = new SessionKey(Rnd.nextInt(), Rnd.nextInt(), Rnd.nextInt(), Rnd.nextInt());
+		client.setSessionKey(sessionKey);
+		client.setState(LoginClientState.AUTHED_LOGIN);
+		send(client, new LoginOk(sessionKey));
+		
+		_buf.clear();
+		_buf.position(HEADER_SIZE);
+		_buf.put((byte) 0x05);
+		_buf.putInt(sessionKey.loginOkID1);
+		_buf.putInt(sessionKey.loginOkID2);
+		final var requestServerList = (RequestServerList) receive(client, clientCrypt);
+		if ((requestServerList == null) || !sessionKey.checkLoginPair(requestServerList.getSessionKey1(), requestServerList.getSessionKey2())) {
+			throw new IllegalStateException("Synthetic session key does not match!");
+		}
+		send(client, new PlayOk(sessionKey));
+	}
+	
+	/**
+	 * Serializes and encrypts a server packet, the same way the selector does.
+	 * @param client the client
+	 * @param packet the packet
+	 */
+	private void send(L2LoginClient client, L2LoginServerPacket packet) {
+		_buf.clear();
+		_buf.position(HEADER_SIZE);
+		packet.writeTo(_buf);
+		final int size = _buf.position() - HEADER_SIZE;
+		_buf.position(HEADER_SIZE);
+		client.encrypt(_buf, size);
+	}
+	
+	/**
+	 * Encrypts the client packet written in the buffer the way the game client does, then decrypts and parses it as the selector does.
+	 * @param client the client
+	 * @param clientCrypt the Blowfish engine of the game client
+	 * @return the parsed packet
+	 */
+	private L2LoginClientPacket receive(L2LoginClient client, BlowfishEngine clientCrypt) {
+		int size = (_buf.position() - HEADER_SIZE) + 4;
+		size += (8 - (size % 8)) % 8;
+		clientCrypt.appendChecksumAndEncrypt(_buf, HEADER_SIZE, size);
+		
+		_buf.limit(HEADER_SIZE + size);
+		_buf.position(HEADER_SIZE);
+		if (!client.decrypt(_buf, size)) {
+			throw new IllegalStateException("Synthetic packet checksum is invalid!");
+		}
+		
+		final var packet = (L2LoginClientPacket) _packetHandler.handlePacket(_buf, client);
+		if ((packet == null) || !packet.readFrom(_buf)) {
+			return null;
+		}
+		return packet;
+	}
+	
+	/**
+	 * Builds the RSA block of RequestAuthLogin the way the game client does.
+	 * @param client the client
+	 * @return the encrypted credentials block
+	 */
+	private static byte[] encryptCredentials(L2LoginClient client) {
+		final byte[] block = new byte[0x80];
+		final byte[] login = LOGIN.getBytes(US_ASCII);
+		final byte[] password = PASSWORD.getBytes(US_ASCII);
+		System.arraycopy(login, 0, block, 0x5E, login.length);
+		System.arraycopy(password, 0, block, 0x6C, password.length);
+		
+		final var modulus = client.getRSAPrivateKey().getModulus();
+		final byte[] encrypted = new BigInteger(1, block).modPow(F4, modulus).toByteArray();
+		final byte[] raw = new byte[0x80];
+		final int length = Math.min(encrypted.length, raw.length);
+		System.arraycopy(encrypted, encrypted.length - length, raw, raw.length - length, length);
+		return raw;
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import static com.l2jserver.loginserver.config.Configuration.mmo;
+import static com.l2jserver.loginserver.config.Configuration.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.l2jserver.loginserver.util.AddressFloodFilter;
+import com.l2jserver.loginserver.util.ProxyProtocol;
+
+/**
+ * Client port listener used when the login server runs behind a load balancer sending PROXY protocol headers.<br>
+ * The selector accepts on its own thread and can't wait for a header, so this listener owns the client port instead: the header is read on a worker thread, as the game server listener does, and the connection is then relayed to the selector, listening on a loopback port.<br>
+ * The address of the player is looked up by the selector with the local port of the relayed connection.
+ * @version 2.6.5.2
+ */
+public final class ProxyProtocolListener extends Thread {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ProxyProtocolListener.class);
+	
+	private final InetAddress _loopback = InetAddress.getLoopbackAddress();
+	
+	private final ProxyProtocol _proxyProtocol;
+	
+	private final AddressFloodFilter _floodFilter = new AddressFloodFilter();
+	
+	/** Threads reading the PROXY protocol headers, so a slow proxy doesn't hold back the accept loop. */
+	private final ExecutorService _headerReaders;
+	
+	private final ProxyRelay _relay;
+	
+	/** Player addresses by the local port of their connection to the selector. */
+	private final Map<Integer, InetAddress> _addresses = new ConcurrentHashMap<>();
+	
+	private final int _relayPort;
+	
+	private ServerSocketChannel _serverChannel;
+	
+	public ProxyProtocolListener() throws IOException {
+		super("ProxyProtocolListener");
+		_proxyProtocol = new ProxyProtocol(server().getProxyProtocolTrustedProxies(), server().getProxyProtocolTimeout());
+		_headerReaders = Executors.newCachedThreadPool(r -> {
+			final var thread = new Thread(r, "ProxyHeaderReader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_relay = new ProxyRelay();
+		try (var socket = new ServerSocket(0, 1, _loopback)) {
+			_relayPort = socket.getLocalPort();
+		}
+	}
+	
+	/**
+	 * Gets the loopback port the selector must listen on.
+	 * @return the relay port
+	 */
+	public int getRelayPort() {
+		return _relayPort;
+	}
+	
+	/**
+	 * Opens the client port.
+	 * @param bindAddress the bind address, {@code null} for all addresses
+	 * @param port the client port
+	 * @throws IOException if the port couldn't be opened, a {@link java.net.BindException} if it's in use
+	 */
+	public void open(InetAddress bindAddress, int port) throws IOException {
+		final var channel = ServerSocketChannel.open();
+		try {
+			channel.bind(new InetSocketAddress(bindAddress, port));
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		_serverChannel = channel;
+	}
+	
+	@Override
+	public synchronized void start() {
+		_relay.start();
+		super.start();
+	}
+	
+	@Override
+	public void run() {
+		while (!isInterrupted()) {
+			try {
+				final var channel = _serverChannel.accept();
+				final var proxyAddress = channel.socket().getInetAddress();
+				if (!_proxyProtocol.isTrusted(proxyAddress)) {
+					LOG.warn("Refused connection from {}, it's not a trusted proxy!", proxyAddress.getHostAddress());
+					channel.close();
+					continue;
+				}
+				_headerReaders.execute(() -> accept(channel));
+			} catch (Exception ex) {
+				if (isInterrupted() || !_serverChannel.isOpen()) {
+					break;
+				}
+				LOG.warn("There has been an error accepting a client connection!", ex);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the PROXY protocol header of a connection from a trusted proxy, then relays it to the selector if the player is allowed.
+	 * @param channel the accepted channel
+	 */
+	private void accept(SocketChannel channel) {
+		final var proxyAddress = channel.socket().getInetAddress();
+		try {
+			final InetAddress address;
+			try {
+				address = _proxyProtocol.readHeader(channel.socket());
+			} catch (IOException ex) {
+				LOG.warn("Invalid PROXY protocol header from {}: {}", proxyAddress.getHostAddress(), ex.getMessage());
+				channel.close();
+				return;
+			}
+			
+			if (!_floodFilter.accept(address) || LoginController.getInstance().isBannedAddress(address)) {
+				channel.close();
+				return;
+			}
+			
+			final var upstream = SocketChannel.open();
+			try {
+				upstream.setOption(StandardSocketOptions.TCP_NODELAY, mmo().isTcpNoDelay());
+				upstream.bind(new InetSocketAddress(_loopback, 0));
+				final int localPort = ((InetSocketAddress) upstream.getLocalAddress()).getPort();
+				// Registered before connecting, the selector looks it up as soon as it accepts.
+				_addresses.put(localPort, address);
+				try {
+					upstream.connect(new InetSocketAddress(_loopback, _relayPort));
+				} catch (IOException ex) {
+					_addresses.remove(localPort);
+					throw ex;
+				}
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, mmo().isTcpNoDelay());
+				_relay.relay(channel, upstream, () -> _addresses.remove(localPort));
+			} catch (IOException ex) {
+				upstream.close();
+				throw ex;
+			}
+		} catch (Exception ex) {
+			LOG.warn("There has been an error accepting the connection from {}!", proxyAddress.getHostAddress(), ex);
+			try {
+				channel.close();
+			} catch (IOException ex2) {
+				// Already closed.
+			}
+		}
+	}
+	
+	/**
+	 * Gets the address of the player behind a relayed connection.
+	 * @param port the remote port of the connection, as seen by the selector
+	 * @return the address of the player, {@code null} if the connection wasn't relayed by this listener
+	 */
+	public InetAddress getAddress(int port) {
+		return _addresses.get(port);
+	}
+	
+	public void close() {
+		interrupt();
+		_headerReaders.shutdownNow();
+		try {
+			if (_serverChannel != null) {
+				_serverChannel.close();
+			}
+		} catch (IOException ex) {
+			LOG.warn("There has been an error closing the connection!", ex);
+		}
+	}
+}
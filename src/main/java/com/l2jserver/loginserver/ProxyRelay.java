@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the data between the client connections accepted by the {@link ProxyProtocolListener} and their connections to the selector, on a single thread.<br>
+ * A login is a few small packets, so one thread relays every connection without holding back the others.<br>
+ * When the selector closes its connection, the data left is written to the client before closing it too, when the client closes its connection, the selector is told with a half-close.
+ * @version 2.6.5.2
+ */
+final class ProxyRelay extends Thread {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ProxyRelay.class);
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private final Selector _selector;
+	
+	private final Queue<Link> _pending = new ConcurrentLinkedQueue<>();
+	
+	ProxyRelay() throws IOException {
+		super("ProxyRelay");
+		setDaemon(true);
+		_selector = Selector.open();
+	}
+	
+	/**
+	 * Starts relaying the data between a client and the selector.
+	 * @param client the client connection
+	 * @param server the connection to the selector
+	 * @param onClose called once both connections are closed
+	 */
+	void relay(SocketChannel client, SocketChannel server, Runnable onClose) {
+		_pending.add(new Link(client, server, onClose));
+		_selector.wakeup();
+	}
+	
+	@Override
+	public void run() {
+		while (!isInterrupted()) {
+			try {
+				_selector.select();
+				Link link;
+				while ((link = _pending.poll()) != null) {
+					link.register();
+				}
+				
+				for (SelectionKey key : _selector.selectedKeys()) {
+					final var endpoint = (Endpoint) key.attachment();
+					endpoint.handle(key);
+				}
+				_selector.selectedKeys().clear();
+			} catch (Exception ex) {
+				LOG.warn("There has been an error relaying PROXY protocol connections!", ex);
+			}
+		}
+	}
+	
+	/**
+	 * A client connection and its connection to the selector.
+	 */
+	private final class Link {
+		private final Endpoint _client;
+		
+		private final Endpoint _server;
+		
+		private final Runnable _onClose;
+		
+		private boolean _closed;
+		
+		Link(SocketChannel client, SocketChannel server, Runnable onClose) {
+			_client = new Endpoint(this, client);
+			_server = new Endpoint(this, server);
+			_client._peer = _server;
+			_server._peer = _client;
+			_onClose = onClose;
+		}
+		
+		void register() {
+			try {
+				_client.register();
+				_server.register();
+			} catch (IOException ex) {
+				close();
+			}
+		}
+		
+		void close() {
+			if (_closed) {
+				return;
+			}
+			_closed = true;
+			_client.close();
+			_server.close();
+			_onClose.run();
+		}
+	}
+	
+	/**
+	 * One side of a link, with the data read from it and not written to its peer yet.
+	 */
+	private final class Endpoint {
+		private final Link _link;
+		
+		private final SocketChannel _channel;
+		
+		private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		
+		private Endpoint _peer;
+		
+		private SelectionKey _key;
+		
+		private boolean _eof;
+		
+		private boolean _shutdown;
+		
+		Endpoint(Link link, SocketChannel channel) {
+			_link = link;
+			_channel = channel;
+		}
+		
+		void register() throws IOException {
+			_channel.configureBlocking(false);
+			_key = _channel.register(_selector, SelectionKey.OP_READ, this);
+		}
+		
+		void handle(SelectionKey key) {
+			try {
+				if (key.isValid() && key.isWritable()) {
+					_peer.flush();
+				}
+				if (key.isValid() && key.isReadable()) {
+					read();
+				}
+			} catch (IOException ex) {
+				_link.close();
+			}
+		}
+		
+		private void read() throws IOException {
+			if (_channel.read(_buffer) < 0) {
+				_eof = true;
+			}
+			flush();
+		}
+		
+		/**
+		 * Writes the data read from this side to its peer, then updates the interests of both sides.
+		 * @throws IOException if the peer couldn't be written
+		 */
+		void flush() throws IOException {
+			_buffer.flip();
+			_peer._channel.write(_buffer);
+			_buffer.compact();
+			
+			if (_eof && (_buffer.position() == 0) && !_shutdown) {
+				if (this == _link._server) {
+					// The login server closed the connection, everything has been written to the client.
+					_link.close();
+					return;
+				}
+				_shutdown = true;
+				_peer._channel.shutdownOutput();
+			}
+			
+			updateInterests();
+			_peer.updateInterests();
+		}
+		
+		/**
+		 * Reads while there is room for the data and the end of stream isn't reached, writes while the peer has data for this side.
+		 */
+		private void updateInterests() {
+			int ops = 0;
+			if (!_eof && _buffer.hasRemaining()) {
+				ops |= SelectionKey.OP_READ;
+			}
+			if (_peer._buffer.position() > 0) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			_key.interestOps(ops);
+		}
+		
+		void close() {
+			try {
+				_channel.close();
+			} catch (IOException ex) {
+				// Already closed.
+			}
+		}
+	}
+}
@@ -18,17 +18,19 @@
  */
 package com.l2jserver.loginserver;
 
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static com.l2jserver.loginserver.config.Configuration.mmo;
 
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.l2jserver.commons.util.IPv4Filter;
 import com.l2jserver.loginserver.network.L2LoginClient;
+import com.l2jserver.loginserver.network.PacketQueue;
 import com.l2jserver.loginserver.network.serverpackets.Init;
 import com.l2jserver.mmocore.AcceptFilter;
 import com.l2jserver.mmocore.ClientFactory;
@@ -46,34 +48,66 @@ public class SelectorHelper implements MMOExecutor<L2LoginClient>, ClientFactory
 	
 	private static final Logger LOG = LoggerFactory.getLogger(SelectorHelper.class);
 	
-	private final ThreadPoolExecutor _generalPacketsThreadPool;
+	/** Minimum number of packet threads used by default, packets can block on the database or the mail server. */
+	private static final int MIN_PACKET_THREADS = 4;
+	
+	private final ExecutorService _packetThreads;
 	
 	private final IPv4Filter _ipv4filter;
 	
-	public SelectorHelper() {
-		_generalPacketsThreadPool = new ThreadPoolExecutor(4, 6, 15L, SECONDS, new LinkedBlockingQueue<>());
+	private volatile boolean _draining = false;
+	
+	/** Listener relaying the client connections from a load balancer, {@code null} if the selector owns the client port. */
+	private final ProxyProtocolListener _proxyListener;
+	
+	public SelectorHelper(ProxyProtocolListener proxyListener) {
+		final int threads = mmo().getPacketThreads() > 0 ? mmo().getPacketThreads() : Math.max(MIN_PACKET_THREADS, Runtime.getRuntime().availableProcessors());
+		final var id = new AtomicInteger();
+		_packetThreads = Executors.newFixedThreadPool(threads, r -> new Thread(r, "PacketThread-" + id.incrementAndGet()));
 		_ipv4filter = new IPv4Filter();
+		_proxyListener = proxyListener;
 	}
 	
 	@Override
 	public void execute(ReceivablePacket<L2LoginClient> packet) {
-		_generalPacketsThreadPool.execute(packet);
+		final var packetQueue = packet.getClient().getPacketQueue();
+		(packetQueue != null ? packetQueue : _packetThreads).execute(packet);
 	}
 	
 	@Override
 	public L2LoginClient create(MMOConnection<L2LoginClient> con) {
 		L2LoginClient client = new L2LoginClient(con);
+		client.setPacketQueue(new PacketQueue(_packetThreads));
+		if (_proxyListener != null) {
+			client.setInetAddress(_proxyListener.getAddress(con.getPort()));
+		}
+		LoginController.getInstance().onClientConnected();
+		IdleConnectionReaper.getInstance().schedule(client);
 		client.sendPacket(new Init(client));
 		return client;
 	}
 	
 	@Override
 	public boolean accept(SocketChannel sc) {
+		if (_draining) {
+			return false;
+		}
 		try {
+			if (_proxyListener != null) {
+				// The listener already applied the flood filter and the bans to the address of the player.
+				return sc.socket().getInetAddress().isLoopbackAddress() && (_proxyListener.getAddress(sc.socket().getPort()) != null);
+			}
 			return _ipv4filter.accept(sc) && !LoginController.getInstance().isBannedAddress(sc.socket().getInetAddress());
 		} catch (Exception ex) {
 			LOG.error("Invalid address {}!", sc.socket().getInetAddress(), ex);
 		}
 		return false;
 	}
+	
+	/**
+	 * Stops accepting new clients, the connected ones are still served.
+	 */
+	public void drain() {
+		_draining = true;
+	}
 }
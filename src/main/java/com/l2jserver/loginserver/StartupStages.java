@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the login server startup stages concurrently, each stage starts as soon as the stages it depends on are done.<br>
+ * Keeps track of when each stage started and how long it took, to log a timing report once the server is up.
+ * @version 2.6.5.2
+ */
+final class StartupStages {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(StartupStages.class);
+	
+	private final long _startTime = System.nanoTime();
+	
+	private final List<StageTiming> _timings = new ArrayList<>();
+	
+	private final ExecutorService _executor;
+	
+	StartupStages() {
+		final var id = new AtomicInteger();
+		_executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+			final var thread = new Thread(r, "StartupStage-" + id.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Schedules a stage.
+	 * @param name the stage name
+	 * @param task the stage task
+	 * @param dependencies the stages that must be done before this one starts
+	 * @return the stage
+	 */
+	CompletableFuture<Void> run(String name, Runnable task, CompletableFuture<?>... dependencies) {
+		return CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+			final long start = System.nanoTime();
+			try {
+				task.run();
+			} catch (RuntimeException ex) {
+				throw new StageException(name, ex);
+			}
+			final long end = System.nanoTime();
+			synchronized (_timings) {
+				_timings.add(new StageTiming(name, NANOSECONDS.toMillis(start - _startTime), NANOSECONDS.toMillis(end - start)));
+			}
+		}, _executor);
+	}
+	
+	/**
+	 * Waits for the given stages.
+	 * @param stages the stages
+	 * @throws StageException if a stage failed, naming the first failed stage
+	 * @throws Exception the exception thrown while waiting
+	 */
+	void await(CompletableFuture<?>... stages) throws Exception {
+		try {
+			CompletableFuture.allOf(stages).join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof Exception cause) {
+				throw cause;
+			}
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Logs the timing of every finished stage and releases the startup threads.
+	 */
+	void report() {
+		_executor.shutdown();
+		synchronized (_timings) {
+			for (StageTiming timing : _timings) {
+				LOG.info("Startup stage {} started at +{} ms and took {} ms.", timing.name(), timing.start(), timing.duration());
+			}
+		}
+		LOG.info("Login Server started in {} ms.", NANOSECONDS.toMillis(System.nanoTime() - _startTime));
+	}
+	
+	private record StageTiming(String name, long start, long duration) {
+	}
+	
+	/**
+	 * Thrown when a startup stage fails, the stages depending on it fail with the same exception.
+	 */
+	static final class StageException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		private final String _stage;
+		
+		StageException(String stage, Throwable cause) {
+			super("Startup stage " + stage + " failed!", cause);
+			_stage = stage;
+		}
+		
+		/**
+		 * Gets the name of the failed stage.
+		 * @return the stage name
+		 */
+		String getStage() {
+			return _stage;
+		}
+	}
+}
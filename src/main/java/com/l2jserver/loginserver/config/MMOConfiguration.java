@@ -53,6 +53,21 @@ public interface MMOConfiguration extends Config {
 	@Key("HelperBufferCount")
 	int getHelperBufferCount();
 	
+	@Key("HelperBufferSize")
+	int getHelperBufferSize();
+	
+	@Key("ReadBufferSize")
+	int getReadBufferSize();
+	
+	@Key("WriteBufferSize")
+	int getWriteBufferSize();
+	
+	@Key("PacketThreads")
+	int getPacketThreads();
+	
 	@Key("TcpNoDelay")
 	boolean isTcpNoDelay();
+	
+	@Key("VectorChecksum")
+	boolean isVectorChecksumEnabled();
 }
\ No newline at end of file
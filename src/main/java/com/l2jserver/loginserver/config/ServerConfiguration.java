@@ -22,6 +22,7 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.aeonbits.owner.Config.HotReloadType.ASYNC;
 import static org.aeonbits.owner.Config.LoadType.MERGE;
 
+import java.util.List;
 import java.util.Set;
 
 import org.aeonbits.owner.Config;
@@ -58,6 +59,24 @@ public interface ServerConfiguration extends Config {
 	@Key("GameServerPort")
 	int getGameServerPort();
 	
+	@Key("ProxyProtocol")
+	boolean isProxyProtocolEnabled();
+	
+	@Key("GameServerProxyProtocol")
+	boolean isGameServerProxyProtocolEnabled();
+	
+	@Key("ProxyProtocolTrustedProxies")
+	List<String> getProxyProtocolTrustedProxies();
+	
+	@Key("ProxyProtocolTimeout")
+	int getProxyProtocolTimeout();
+	
+	@Key("ConnectedTimeout")
+	int getConnectedTimeout();
+	
+	@Key("AuthedGGTimeout")
+	int getAuthedGGTimeout();
+	
 	@Key("ServerVersions")
 	Set<Integer> getServerVersions();
 	
@@ -85,12 +104,36 @@ public interface ServerConfiguration extends Config {
 	@Key("MaxConnectionPerIP")
 	int getMaxConnectionPerIP();
 	
+	@Key("RSAKeyPairsMinimum")
+	int getRSAKeyPairsMinimum();
+	
+	@Key("RSAKeyPairsRotationTime")
+	long getRSAKeyPairsRotationTime();
+	
+	@Key("KeyCache")
+	boolean isKeyCacheEnabled();
+	
+	@Key("KeyCacheFile")
+	String getKeyCacheFile();
+	
+	@Key("KeyCacheSecret")
+	String getKeyCacheSecret();
+	
+	@Key("WarmUp")
+	boolean isWarmUpEnabled();
+	
+	@Key("WarmUpTime")
+	int getWarmUpTime();
+	
 	@Key("AccountInactiveAccessLevel")
 	int getAccountInactiveAccessLevel();
 
 	@Key("ShowLicence")
 	boolean showLicense();
 	
+	@Key("ServerListCharactersWait")
+	int getServerListCharactersWait();
+	
 	@Key("AutoCreateAccounts")
 	boolean autoCreateAccounts();
 	
@@ -108,4 +151,31 @@ public interface ServerConfiguration extends Config {
 	
 	@Key("LoginRestartTime")
 	int getLoginRestartTime();
+	
+	@Key("LoginRestartHandoff")
+	boolean isLoginRestartHandoffEnabled();
+	
+	@Key("LoginRestartDrainTime")
+	int getLoginRestartDrainTime();
+	
+	@Key("CharacterCacheSize")
+	int getCharacterCacheSize();
+	
+	@Key("AutoStatusNormalLoad")
+	int getAutoStatusNormalLoad();
+	
+	@Key("AutoStatusFullLoad")
+	int getAutoStatusFullLoad();
+	
+	@Key("AutoStatusHysteresis")
+	int getAutoStatusHysteresis();
+	
+	@Key("AutoStatusLimitsLogins")
+	boolean isAutoStatusLimitingLogins();
+	
+	@Key("LoginQueueTime")
+	int getLoginQueueTime();
+	
+	@Key("LoginQueueSize")
+	int getLoginQueueSize();
 }
\ No newline at end of file
@@ -22,13 +22,20 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.security.interfaces.RSAPrivateKey;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.l2jserver.commons.util.Rnd;
+import com.l2jserver.loginserver.IdleConnectionReaper;
 import com.l2jserver.loginserver.LoginController;
 import com.l2jserver.loginserver.SessionKey;
 import com.l2jserver.loginserver.network.serverpackets.L2LoginServerPacket;
@@ -36,6 +43,7 @@ import com.l2jserver.loginserver.network.serverpackets.LoginFail;
 import com.l2jserver.loginserver.network.serverpackets.LoginFail.LoginFailReason;
 import com.l2jserver.loginserver.network.serverpackets.PlayFail;
 import com.l2jserver.loginserver.network.serverpackets.PlayFail.PlayFailReason;
+import com.l2jserver.loginserver.security.BlowfishKey;
 import com.l2jserver.loginserver.security.ScrambledKeyPair;
 import com.l2jserver.loginserver.security.crypt.LoginCrypt;
 import com.l2jserver.mmocore.MMOClient;
@@ -51,6 +59,12 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	
 	private static final Logger LOG = LoggerFactory.getLogger(L2LoginClient.class);
 	
+	/** Replies queued by the client packets. */
+	private static final LongAdder REPLIES = new LongAdder();
+	
+	/** Client packets that queued at least one reply. */
+	private static final LongAdder REPLIED_PACKETS = new LongAdder();
+	
 	public enum LoginClientState {
 		CONNECTED,
 		AUTHED_GG,
@@ -59,11 +73,12 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	
 	private LoginClientState _state;
 	
+	/** Created on the first packet, clients closed before that don't need it. */
 	private final LoginCrypt _loginCrypt;
 	
 	private final ScrambledKeyPair _scrambledPair;
 	
-	private final byte[] _blowfishKey;
+	private final BlowfishKey _blowfishKey;
 	
 	private String _account;
 	
@@ -81,23 +96,41 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	
 	private Map<Integer, long[]> _charsToDelete;
 	
+	/** Game servers asked for the characters of the account that didn't reply yet. */
+	private final Set<Integer> _pendingCharacters = ConcurrentHashMap.newKeySet();
+	
+	private final CompletableFuture<Void> _charactersReceived = new CompletableFuture<>();
+	
 	private final long _connectionStartTime;
 	
+	private PacketQueue _packetQueue;
+	
+	private InetAddress _address;
+	
+	private volatile long _idleDeadline;
+	
+	/** Replies of the client packet being run, only used by the thread running it. */
+	private final List<L2LoginServerPacket> _outbox = new ArrayList<>(2);
+	
+	/** Thread running the client packet whose replies are held, packets sent from other threads are never held. */
+	private Thread _batchThread;
+	
 	public L2LoginClient(MMOConnection<L2LoginClient> con) {
 		super(con);
 		_state = LoginClientState.CONNECTED;
 		_scrambledPair = LoginController.getInstance().getScrambledRSAKeyPair();
 		_blowfishKey = LoginController.getInstance().getBlowfishKey();
+		_loginCrypt = new LoginCrypt();
+		_loginCrypt.setKey(_blowfishKey.getEngine());
 		_sessionId = Rnd.nextInt();
 		_connectionStartTime = System.currentTimeMillis();
-		_loginCrypt = new LoginCrypt();
-		_loginCrypt.setKey(_blowfishKey);
+		_address = con != null ? con.getInetAddress() : null;
 	}
 	
 	@Override
 	public boolean decrypt(ByteBuffer buf, int size) {
 		try {
-			if (!_loginCrypt.decrypt(buf.array(), buf.position(), size)) {
+			if (!_loginCrypt.decrypt(buf, buf.position(), size)) {
 				LOG.warn("Wrong checksum from client {}!", toString());
 				super.getConnection().close((SendablePacket<L2LoginClient>) null);
 				return false;
@@ -114,7 +147,7 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	public boolean encrypt(ByteBuffer buf, int size) {
 		final int offset = buf.position();
 		try {
-			size = _loginCrypt.encrypt(buf.array(), offset, size);
+			size = _loginCrypt.encrypt(buf, offset, size);
 		} catch (IOException ex) {
 			LOG.warn("There has been an error encrypting message!", ex);
 			return false;
@@ -129,16 +162,24 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	
 	public void setState(LoginClientState state) {
 		_state = state;
+		// Synthetic clients of the warm-up are not connected.
+		if (getConnection() != null) {
+			IdleConnectionReaper.getInstance().schedule(this);
+		}
 	}
 	
 	public byte[] getBlowfishKey() {
-		return _blowfishKey;
+		return _blowfishKey.getKey();
 	}
 	
 	public byte[] getScrambledModulus() {
 		return _scrambledPair.getScrambledModulus();
 	}
 	
+	public byte[] getInitTemplate() {
+		return _scrambledPair.getInitTemplate(_blowfishKey);
+	}
+	
 	public RSAPrivateKey getRSAPrivateKey() {
 		return (RSAPrivateKey) _scrambledPair.getPair().getPrivate();
 	}
@@ -191,25 +232,107 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 		return _connectionStartTime;
 	}
 	
+	/**
+	 * Gets the address of the player, it differs from the connection address behind a load balancer.
+	 * @return the address of the player
+	 */
+	public InetAddress getInetAddress() {
+		return _address;
+	}
+	
+	public void setInetAddress(InetAddress address) {
+		_address = address;
+	}
+	
+	/**
+	 * Gets the time when this client is disconnected if it stays in its current state.
+	 * @return the timestamp in milliseconds, {@code 0} if there is none
+	 */
+	public long getIdleDeadline() {
+		return _idleDeadline;
+	}
+	
+	public void setIdleDeadline(long idleDeadline) {
+		_idleDeadline = idleDeadline;
+	}
+	
+	/**
+	 * Gets the queue running the packets of this client in order.
+	 * @return the packet queue
+	 */
+	public PacketQueue getPacketQueue() {
+		return _packetQueue;
+	}
+	
+	public void setPacketQueue(PacketQueue packetQueue) {
+		_packetQueue = packetQueue;
+	}
+	
 	public void sendPacket(L2LoginServerPacket lsp) {
+		if (_batchThread == Thread.currentThread()) {
+			_outbox.add(lsp);
+			return;
+		}
+		
 		getConnection().sendPacket(lsp);
 	}
 	
+	/**
+	 * Holds the packets sent by the current thread from now on until {@link #endBatch()}, so they are queued together and the selector encrypts and writes them in the same pass.<br>
+	 * Must be called from the packet queue of this client.
+	 */
+	public void beginBatch() {
+		_batchThread = Thread.currentThread();
+	}
+	
+	/**
+	 * Queues the packets held since {@link #beginBatch()}, they are dropped if the connection has been closed meanwhile.
+	 */
+	public void endBatch() {
+		_batchThread = null;
+		if (_outbox.isEmpty()) {
+			return;
+		}
+		
+		if (getConnection().isClosed()) {
+			_outbox.clear();
+			return;
+		}
+		
+		for (L2LoginServerPacket lsp : _outbox) {
+			getConnection().sendPacket(lsp);
+		}
+		REPLIES.add(_outbox.size());
+		REPLIED_PACKETS.increment();
+		_outbox.clear();
+	}
+	
 	public void close(LoginFailReason reason) {
-		getConnection().close(new LoginFail(reason));
+		close(new LoginFail(reason));
 	}
 	
 	public void close(PlayFailReason reason) {
-		getConnection().close(new PlayFail(reason));
+		close(new PlayFail(reason));
 	}
 	
 	public void close(L2LoginServerPacket lsp) {
+		// The held packets are dropped by endBatch, this can be called from other threads.
 		getConnection().close(lsp);
 	}
 	
+	/**
+	 * Gets the average number of replies queued by a client packet since startup, counting only the client packets that replied.<br>
+	 * It tells how many packets are queued together, not how many the selector writes in a single pass.
+	 * @return the replies per client packet
+	 */
+	public static double getRepliesPerClientPacket() {
+		final long packets = REPLIED_PACKETS.sum();
+		return packets == 0 ? 0 : (double) REPLIES.sum() / packets;
+	}
+	
 	public void setCharsOnServ(int servId, int chars) {
 		if (_charsOnServers == null) {
-			_charsOnServers = new HashMap<>();
+			_charsOnServers = new ConcurrentHashMap<>();
 		}
 		_charsOnServers.put(servId, chars);
 	}
@@ -220,7 +343,7 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	
 	public void serCharsWaitingDelOnServ(int servId, long[] charsToDel) {
 		if (_charsToDelete == null) {
-			_charsToDelete = new HashMap<>();
+			_charsToDelete = new ConcurrentHashMap<>();
 		}
 		_charsToDelete.put(servId, charsToDel);
 	}
@@ -229,8 +352,33 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 		return _charsToDelete;
 	}
 	
+	/**
+	 * Sets the game servers about to be asked for the characters of the account.
+	 * @param serverIds the game server IDs
+	 * @return a future completed once all of them replied
+	 */
+	public CompletableFuture<Void> expectCharacters(Collection<Integer> serverIds) {
+		_pendingCharacters.addAll(serverIds);
+		if (_pendingCharacters.isEmpty()) {
+			_charactersReceived.complete(null);
+		}
+		return _charactersReceived;
+	}
+	
+	/**
+	 * Called when a game server replied with the characters of the account.
+	 * @param serverId the game server ID
+	 */
+	public void onCharactersReceived(int serverId) {
+		if (_pendingCharacters.remove(serverId) && _pendingCharacters.isEmpty()) {
+			_charactersReceived.complete(null);
+		}
+	}
+	
 	@Override
 	public void onDisconnection() {
+		LoginController.getInstance().onClientDisconnected();
+		IdleConnectionReaper.getInstance().cancel(this);
 		if (!hasJoinedGS() || ((getConnectionStartTime() + LoginController.LOGIN_TIMEOUT) < System.currentTimeMillis())) {
 			LoginController.getInstance().removeAuthedLoginClient(getAccount());
 		}
@@ -238,11 +386,11 @@ public final class L2LoginClient extends MMOClient<MMOConnection<L2LoginClient>>
 	
 	@Override
 	public String toString() {
-		InetAddress address = getConnection().getInetAddress();
+		final var address = getConnection().getInetAddress() == null ? "disconnected" : _address.getHostAddress();
 		if (getState() == LoginClientState.AUTHED_LOGIN) {
-			return "[" + getAccount() + " (" + (address == null ? "disconnected" : address.getHostAddress()) + ")]";
+			return "[" + getAccount() + " (" + address + ")]";
 		}
-		return "[" + (address == null ? "disconnected" : address.getHostAddress()) + "]";
+		return "[" + address + "]";
 	}
 	
 	@Override
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import com.l2jserver.loginserver.network.L2LoginClient.LoginClientState;
 import com.l2jserver.loginserver.network.clientpackets.AuthGameGuard;
+import com.l2jserver.loginserver.network.clientpackets.PacketPool;
 import com.l2jserver.loginserver.network.clientpackets.RequestAuthLogin;
 import com.l2jserver.loginserver.network.clientpackets.RequestServerList;
 import com.l2jserver.loginserver.network.clientpackets.RequestServerLogin;
@@ -40,6 +41,16 @@ public final class L2LoginPacketHandler implements PacketHandler<L2LoginClient>
 	
 	private static final Logger LOG = LoggerFactory.getLogger(L2LoginPacketHandler.class);
 	
+	private static final int POOL_SIZE = 64;
+	
+	private final PacketPool _authGameGuardPool = new PacketPool(POOL_SIZE, AuthGameGuard::new);
+	
+	private final PacketPool _requestAuthLoginPool = new PacketPool(POOL_SIZE, RequestAuthLogin::new);
+	
+	private final PacketPool _requestServerLoginPool = new PacketPool(POOL_SIZE, RequestServerLogin::new);
+	
+	private final PacketPool _requestServerListPool = new PacketPool(POOL_SIZE, RequestServerList::new);
+	
 	@Override
 	public ReceivablePacket<L2LoginClient> handlePacket(ByteBuffer buf, L2LoginClient client) {
 		int opcode = buf.get() & 0xFF;
@@ -50,22 +61,22 @@ public final class L2LoginPacketHandler implements PacketHandler<L2LoginClient>
 		switch (state) {
 			case CONNECTED:
 				if (opcode == 0x07) {
-					packet = new AuthGameGuard();
+					packet = _authGameGuardPool.obtain();
 				} else {
 					debugOpcode(opcode, state);
 				}
 				break;
 			case AUTHED_GG:
 				if (opcode == 0x00) {
-					packet = new RequestAuthLogin();
+					packet = _requestAuthLoginPool.obtain();
 				} else {
 					debugOpcode(opcode, state);
 				}
 				break;
 			case AUTHED_LOGIN:
 				switch (opcode) {
-					case 0x02 -> packet = new RequestServerLogin();
-					case 0x05 -> packet = new RequestServerList();
+					case 0x02 -> packet = _requestServerLoginPool.obtain();
+					case 0x05 -> packet = _requestServerListPool.obtain();
 					default -> debugOpcode(opcode, state);
 				}
 				break;
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.network;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the packets of one client in order on the shared packet threads.<br>
+ * Each client has its own queue, so a packet waiting on the database, the RSA decryption or the mail server only holds back the packets of its own client, the other clients are served by the other threads.<br>
+ * Only the packet handling runs here, mmocore decrypts and encrypts the packets of every client on its selector thread.
+ * @version 2.6.5.2
+ */
+public final class PacketQueue implements Executor {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(PacketQueue.class);
+	
+	/** Packets run in a row before the thread is given to the other clients. */
+	private static final int MAX_PACKETS_PER_RUN = 8;
+	
+	private final Executor _executor;
+	
+	private final Queue<Runnable> _packets = new ConcurrentLinkedQueue<>();
+	
+	private final AtomicBoolean _scheduled = new AtomicBoolean();
+	
+	/**
+	 * Creates a packet queue.
+	 * @param executor the shared packet threads
+	 */
+	public PacketQueue(Executor executor) {
+		_executor = executor;
+	}
+	
+	@Override
+	public void execute(Runnable packet) {
+		_packets.add(packet);
+		schedule();
+	}
+	
+	private void schedule() {
+		if (_scheduled.compareAndSet(false, true)) {
+			_executor.execute(this::run);
+		}
+	}
+	
+	private void run() {
+		try {
+			Runnable packet;
+			for (int i = 0; (i < MAX_PACKETS_PER_RUN) && ((packet = _packets.poll()) != null); i++) {
+				try {
+					packet.run();
+				} catch (Exception ex) {
+					LOG.error("There has been an error running a packet!", ex);
+				}
+			}
+		} finally {
+			_scheduled.set(false);
+			// Packets queued while the last one ran, or left over.
+			if (!_packets.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+}
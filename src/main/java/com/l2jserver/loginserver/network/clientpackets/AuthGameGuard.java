@@ -68,7 +68,7 @@ public class AuthGameGuard extends L2LoginClientPacket {
 	}
 	
 	@Override
-	public void run() {
+	protected void runImpl() {
 		if (_sessionId == getClient().getSessionId()) {
 			getClient().setState(LoginClientState.AUTHED_GG);
 			getClient().sendPacket(new GGAuth(getClient().getSessionId()));
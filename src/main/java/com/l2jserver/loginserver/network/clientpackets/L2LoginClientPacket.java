@@ -18,6 +18,8 @@
  */
 package com.l2jserver.loginserver.network.clientpackets;
 
+import java.nio.ByteBuffer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,15 +35,64 @@ public abstract class L2LoginClientPacket extends ReceivablePacket<L2LoginClient
 	
 	private static final Logger LOG = LoggerFactory.getLogger(L2LoginClientPacket.class);
 	
+	private PacketPool _pool;
+	
 	@Override
 	protected final boolean read() {
+		boolean read = false;
 		try {
-			return readImpl();
+			read = readImpl();
 		} catch (Exception ex) {
 			LOG.error("Error reading {}!", getClass().getSimpleName(), ex);
-			return false;
 		}
+		
+		if (!read) {
+			// Discarded by the selector, it won't be run.
+			release();
+		}
+		return read;
+	}
+	
+	@Override
+	public final void run() {
+		final L2LoginClient client = getClient();
+		client.beginBatch();
+		try {
+			runImpl();
+		} finally {
+			client.endBatch();
+			release();
+		}
+	}
+	
+	/**
+	 * Reads this packet from the given buffer outside of the selector, used to warm up the packet handling code.
+	 * @param buf the buffer, positioned after the opcode
+	 * @return true if the packet was read, false otherwise
+	 */
+	public final boolean readFrom(ByteBuffer buf) {
+		_buf = buf;
+		return read();
 	}
 	
 	protected abstract boolean readImpl();
+	
+	protected abstract void runImpl();
+	
+	/**
+	 * Clears the data read by this packet before it's reused.
+	 */
+	protected void clear() {
+		// Do nothing.
+	}
+	
+	void setPool(PacketPool pool) {
+		_pool = pool;
+	}
+	
+	private void release() {
+		if (_pool != null) {
+			_pool.release(this);
+		}
+	}
 }
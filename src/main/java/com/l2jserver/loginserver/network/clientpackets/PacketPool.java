@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.network.clientpackets;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of client packets of one type.<br>
+ * Packets are obtained by the selector thread when a packet arrives, and go back to the pool once they have been run, or discarded if they could not be read.<br>
+ * When the pool is empty a new packet is created, when it's full the released packet is left to the garbage collector.
+ * @version 2.6.5.2
+ */
+public final class PacketPool {
+	
+	private final ArrayBlockingQueue<L2LoginClientPacket> _packets;
+	
+	private final Supplier<L2LoginClientPacket> _factory;
+	
+	public PacketPool(int capacity, Supplier<L2LoginClientPacket> factory) {
+		_packets = new ArrayBlockingQueue<>(capacity);
+		_factory = factory;
+	}
+	
+	/**
+	 * Gets a free packet.
+	 * @return the packet
+	 */
+	public L2LoginClientPacket obtain() {
+		var packet = _packets.poll();
+		if (packet == null) {
+			packet = _factory.get();
+			packet.setPool(this);
+		}
+		return packet;
+	}
+	
+	/**
+	 * Returns a packet to the pool, after clearing it.
+	 * @param packet the packet
+	 */
+	void release(L2LoginClientPacket packet) {
+		packet.clear();
+		_packets.offer(packet);
+	}
+}
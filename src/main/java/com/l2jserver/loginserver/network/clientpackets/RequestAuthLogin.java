@@ -19,8 +19,14 @@
 package com.l2jserver.loginserver.network.clientpackets;
 
 import static com.l2jserver.loginserver.config.Configuration.server;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.net.InetAddress;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Arrays;
+import java.util.Locale;
 
 import javax.crypto.Cipher;
 
@@ -49,14 +55,19 @@ public class RequestAuthLogin extends L2LoginClientPacket {
 	
 	private final byte[] _raw = new byte[128];
 	
+	/** Decrypted credentials block, zeroed once parsed. */
+	private final byte[] _decrypted = new byte[128];
+	
+	private Cipher _rsaCipher;
+	
 	private String _user;
 	
-	private String _password;
+	private String _passwordHash;
 	
 	private int _ncotp;
 	
-	public String getPassword() {
-		return _password;
+	public String getPasswordHash() {
+		return _passwordHash;
 	}
 	
 	public String getUser() {
@@ -76,35 +87,124 @@ public class RequestAuthLogin extends L2LoginClientPacket {
 		return false;
 	}
 	
-	@Override
-	public void run() {
-		byte[] decrypted;
-		final L2LoginClient client = getClient();
+	/**
+	 * Decrypts the RSA block and parses the credentials.<br>
+	 * The login is kept in its canonical lower case form, the password is hashed straight from the decrypted block, which is zeroed afterwards.
+	 * @param privateKey the RSA private key sent to the client
+	 * @return {@code null} if the credentials were decrypted and parsed, otherwise the reason to refuse the login
+	 */
+	public LoginFailReason decryptCredentials(RSAPrivateKey privateKey) {
 		try {
-			final Cipher rsaCipher = Cipher.getInstance("RSA/ECB/nopadding");
-			rsaCipher.init(Cipher.DECRYPT_MODE, client.getRSAPrivateKey());
-			decrypted = rsaCipher.doFinal(_raw, 0x00, 0x80);
+			if (_rsaCipher == null) {
+				_rsaCipher = Cipher.getInstance("RSA/ECB/nopadding");
+			}
+			_rsaCipher.init(Cipher.DECRYPT_MODE, privateKey);
+			_rsaCipher.doFinal(_raw, 0x00, 0x80, _decrypted, 0x00);
 		} catch (Exception ex) {
 			LOG.warn("There has been an error trying to login!", ex);
-			return;
+			return LoginFailReason.REASON_ACCESS_FAILED;
 		}
 		
 		try {
-			_user = new String(decrypted, 0x5E, 14).trim().toLowerCase();
-			_password = new String(decrypted, 0x6C, 16).trim();
-			_ncotp = decrypted[0x7c];
-			_ncotp |= decrypted[0x7d] << 8;
-			_ncotp |= decrypted[0x7e] << 16;
-			_ncotp |= decrypted[0x7f] << 24;
+			_user = parseLogin(_decrypted, 0x5E, 14);
+			if (_user == null) {
+				return LoginFailReason.REASON_USER_OR_PASS_WRONG;
+			}
+			_passwordHash = hashPassword(_decrypted, 0x6C, 16);
+			_ncotp = _decrypted[0x7c];
+			_ncotp |= _decrypted[0x7d] << 8;
+			_ncotp |= _decrypted[0x7e] << 16;
+			_ncotp |= _decrypted[0x7f] << 24;
 		} catch (Exception ex) {
 			LOG.warn("There has been an error parsing credentials!", ex);
+			return LoginFailReason.REASON_ACCESS_FAILED;
+		} finally {
+			Arrays.fill(_decrypted, (byte) 0);
+		}
+		return null;
+	}
+	
+	/**
+	 * Parses the login in its canonical form, trimmed and in lower case.
+	 * @param buf the buffer
+	 * @param offset the offset of the login
+	 * @param length the length of the login field
+	 * @return the login, {@code null} if it's empty
+	 */
+	private static String parseLogin(byte[] buf, int offset, int length) {
+		int start = offset;
+		int end = offset + length;
+		while ((start < end) && ((buf[start] & 0xFF) <= ' ')) {
+			start++;
+		}
+		while ((end > start) && ((buf[end - 1] & 0xFF) <= ' ')) {
+			end--;
+		}
+		if (start == end) {
+			return null;
+		}
+		
+		for (int i = start; i < end; i++) {
+			final byte b = buf[i];
+			if (b < 0) {
+				// Non ASCII logins are decoded first, as previous versions did.
+				return new String(buf, offset, length, UTF_8).trim().toLowerCase(Locale.ROOT);
+			}
+			if ((b >= 'A') && (b <= 'Z')) {
+				buf[i] = (byte) (b + ('a' - 'A'));
+			}
+		}
+		return new String(buf, start, end - start, US_ASCII);
+	}
+	
+	/**
+	 * Hashes the trimmed password straight from the buffer.<br>
+	 * Non ASCII passwords are decoded first, so their hash matches the one stored by previous versions.
+	 * @param buf the buffer
+	 * @param offset the offset of the password
+	 * @param length the length of the password field
+	 * @return the password hash
+	 * @throws Exception if the password can't be hashed
+	 */
+	private static String hashPassword(byte[] buf, int offset, int length) throws Exception {
+		int start = offset;
+		int end = offset + length;
+		while ((start < end) && ((buf[start] & 0xFF) <= ' ')) {
+			start++;
+		}
+		while ((end > start) && ((buf[end - 1] & 0xFF) <= ' ')) {
+			end--;
+		}
+		
+		for (int i = start; i < end; i++) {
+			if (buf[i] < 0) {
+				return LoginController.getInstance().hashPassword(new String(buf, offset, length, UTF_8).trim());
+			}
+		}
+		return LoginController.getInstance().hashPassword(buf, start, end - start);
+	}
+	
+	@Override
+	protected void clear() {
+		Arrays.fill(_raw, (byte) 0);
+		_user = null;
+		_passwordHash = null;
+		_ncotp = 0;
+	}
+	
+	@Override
+	protected void runImpl() {
+		final L2LoginClient client = getClient();
+		final var failReason = decryptCredentials(client.getRSAPrivateKey());
+		if (failReason != null) {
+			client.close(failReason);
 			return;
 		}
 		
-		InetAddress clientAddr = getClient().getConnection().getInetAddress();
+		InetAddress clientAddr = getClient().getInetAddress();
 		
 		final LoginController lc = LoginController.getInstance();
-		AccountInfo info = lc.retrieveAccountInfo(clientAddr, _user, _password);
+		AccountInfo info = lc.retrieveAccountInfo(clientAddr, _user, _passwordHash);
 		if (info == null) {
 			// user or pass wrong
 			client.close(LoginFailReason.REASON_USER_OR_PASS_WRONG);
@@ -117,9 +217,13 @@ public class RequestAuthLogin extends L2LoginClientPacket {
 				client.setAccount(info.getLogin());
 				client.setState(LoginClientState.AUTHED_LOGIN);
 				client.setSessionKey(lc.assignSessionKeyToClient(info.getLogin(), client));
-				lc.getCharactersOnAccount(info.getLogin());
+				final var charactersReceived = lc.getCharactersOnAccount(info.getLogin());
 				if (server().showLicense()) {
 					client.sendPacket(new LoginOk(getClient().getSessionKey()));
+				} else if (server().getServerListCharactersWait() > 0) {
+					// Wait for the characters without holding a packet thread, then send the list from the packet queue
+					charactersReceived.completeOnTimeout(null, server().getServerListCharactersWait(), MILLISECONDS)
+						.thenRunAsync(() -> client.sendPacket(new ServerList(client)), client.getPacketQueue());
 				} else {
 					getClient().sendPacket(new ServerList(getClient()));
 				}
@@ -145,8 +249,9 @@ public class RequestAuthLogin extends L2LoginClientPacket {
 					client.close(LoginFailReason.REASON_ACCOUNT_IN_USE);
 
 					// kick from there
-					if (gsi.isAuthed()) {
-						gsi.getGameServerThread().kickPlayer(info.getLogin());
+					final var status = gsi.getGameServerStatus();
+					if (status.authed()) {
+						status.gameServerThread().kickPlayer(info.getLogin());
 					}
 				}
 			}
@@ -59,7 +59,7 @@ public class RequestServerList extends L2LoginClientPacket {
 	}
 	
 	@Override
-	public void run() {
+	protected void runImpl() {
 		if (getClient().getSessionKey().checkLoginPair(_skey1, _skey2)) {
 			getClient().sendPacket(new ServerList(getClient()));
 		} else {
@@ -21,6 +21,7 @@ package com.l2jserver.loginserver.network.clientpackets;
 import static com.l2jserver.loginserver.config.Configuration.server;
 
 import com.l2jserver.loginserver.LoginController;
+import com.l2jserver.loginserver.LoginQueue;
 import com.l2jserver.loginserver.SessionKey;
 import com.l2jserver.loginserver.network.serverpackets.LoginFail.LoginFailReason;
 import com.l2jserver.loginserver.network.serverpackets.PlayFail.PlayFailReason;
@@ -65,14 +66,17 @@ public class RequestServerLogin extends L2LoginClientPacket {
 	}
 	
 	@Override
-	public void run() {
+	protected void runImpl() {
 		SessionKey sk = getClient().getSessionKey();
 		// if we didn't showed the license we can't check these values
 		if (!server().showLicense() || sk.checkLoginPair(_skey1, _skey2)) {
-			if (LoginController.getInstance().isLoginPossible(getClient(), _serverId)) {
+			final var queue = LoginQueue.getInstance();
+			// GMs skip the queue, the others take a slot shared with the queue
+			final boolean admitted = getClient().getAccessLevel() > 0 ? LoginController.getInstance().isLoginPossible(getClient(), _serverId) : queue.tryAdmitDirect(getClient(), _serverId);
+			if (admitted) {
 				getClient().setJoinedGS(true);
 				getClient().sendPacket(new PlayOk(sk));
-			} else {
+			} else if (!queue.enqueue(getClient(), _serverId)) {
 				getClient().close(PlayFailReason.REASON_SERVER_OVERLOADED);
 			}
 		} else {
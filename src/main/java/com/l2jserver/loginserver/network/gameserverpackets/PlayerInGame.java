@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import com.l2jserver.commons.dao.ServerNameDAO;
 import com.l2jserver.commons.network.BaseRecievePacket;
 import com.l2jserver.loginserver.GameServerThread;
+import com.l2jserver.loginserver.LoginQueue;
 
 /**
  * Player In Game packet.
@@ -42,6 +43,7 @@ public class PlayerInGame extends BaseRecievePacket {
 		for (int i = 0; i < size; i++) {
 			String account = readS();
 			server.addAccountOnGameServer(account);
+			LoginQueue.getInstance().onPlayerInGame(server.getServerId(), account);
 			if (server().isDebug()) {
 				LOG.info("Account {} logged in Game Server {}[{}].", account, ServerNameDAO.getServer(server.getServerId()), server.getServerId());
 			}
@@ -26,6 +26,8 @@ import org.slf4j.LoggerFactory;
 import com.l2jserver.commons.dao.ServerNameDAO;
 import com.l2jserver.commons.network.BaseRecievePacket;
 import com.l2jserver.loginserver.GameServerThread;
+import com.l2jserver.loginserver.LoginController;
+import com.l2jserver.loginserver.LoginQueue;
 
 /**
  * Player Logout packet.
@@ -41,6 +43,8 @@ public class PlayerLogout extends BaseRecievePacket {
 		String account = readS();
 		
 		server.removeAccountOnGameServer(account);
+		LoginController.getInstance().refreshCharactersOnServer(account, server);
+		LoginQueue.getInstance().onPlayerLogout(server.getServerId());
 		if (server().isDebug()) {
 			LOG.info("Player {} logged out from game server {}[{}].", account, ServerNameDAO.getServer(server.getServerId()), server.getServerId());
 		}
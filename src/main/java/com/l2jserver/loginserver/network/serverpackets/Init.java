@@ -18,6 +18,10 @@
  */
 package com.l2jserver.loginserver.network.serverpackets;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 import com.l2jserver.loginserver.network.L2LoginClient;
 
 /**
@@ -37,37 +41,66 @@ import com.l2jserver.loginserver.network.L2LoginClient;
  * @version 2.6.1.0
  */
 public final class Init extends L2LoginServerPacket {
+	
+	/** Offset of the session id in the packet. */
+	private static final int SESSION_ID_OFFSET = 1;
+	
+	private static final int SIZE = 1 + 4 + 4 + 0x80 + 16 + 16 + 1;
+	
 	private final int _sessionId;
 	
-	private final byte[] _publicKey;
-	private final byte[] _blowfishKey;
+	private final byte[] _template;
 	
 	public Init(L2LoginClient client) {
-		this(client.getScrambledModulus(), client.getBlowfishKey(), client.getSessionId());
+		this(client.getInitTemplate(), client.getSessionId());
 	}
 	
 	public Init(byte[] publickey, byte[] blowfishkey, int sessionId) {
+		this(createTemplate(publickey, blowfishkey), sessionId);
+	}
+	
+	/**
+	 * Creates the packet from a template.
+	 * @param template the packet, without session id
+	 * @param sessionId the session id
+	 * @see #createTemplate(byte[], byte[])
+	 */
+	public Init(byte[] template, int sessionId) {
+		_template = template;
 		_sessionId = sessionId;
-		_publicKey = publickey;
-		_blowfishKey = blowfishkey;
 	}
 	
-	@Override
-	protected void write() {
-		writeC(0x00); // init packet id
+	/**
+	 * Serializes the packet for a scrambled RSA public key and Blowfish key, without session id.<br>
+	 * Every client getting the same keys gets the same packet but for the session id, so the template is built once and copied.
+	 * @param publickey the scrambled RSA public key
+	 * @param blowfishkey the Blowfish key
+	 * @return the template
+	 */
+	public static byte[] createTemplate(byte[] publickey, byte[] blowfishkey) {
+		final var buf = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte) 0x00); // init packet id
 		
-		writeD(_sessionId); // session id
-		writeD(0x0000c621); // protocol revision
+		buf.putInt(0); // session id
+		buf.putInt(0x0000c621); // protocol revision
 		
-		writeB(_publicKey); // RSA Public Key
+		buf.put(publickey); // RSA Public Key
 		
 		// unk GG related?
-		writeD(0x29DD954E);
-		writeD(0x77C39CFC);
-		writeD(0x97ADB620);
-		writeD(0x07BDE0F7);
+		buf.putInt(0x29DD954E);
+		buf.putInt(0x77C39CFC);
+		buf.putInt(0x97ADB620);
+		buf.putInt(0x07BDE0F7);
 		
-		writeB(_blowfishKey); // BlowFish key
-		writeC(0x00); // null termination ;)
+		buf.put(blowfishkey); // BlowFish key
+		buf.put((byte) 0x00); // null termination ;)
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+	
+	@Override
+	protected void write() {
+		final int start = _buf.position();
+		writeB(_template);
+		_buf.putInt(start + SESSION_ID_OFFSET, _sessionId);
 	}
 }
@@ -18,6 +18,8 @@
  */
 package com.l2jserver.loginserver.network.serverpackets;
 
+import java.nio.ByteBuffer;
+
 import com.l2jserver.loginserver.network.L2LoginClient;
 import com.l2jserver.mmocore.SendablePacket;
 
@@ -27,4 +29,12 @@ import com.l2jserver.mmocore.SendablePacket;
  */
 public abstract class L2LoginServerPacket extends SendablePacket<L2LoginClient> {
 	
+	/**
+	 * Writes this packet into the given buffer outside of the selector, used to warm up the packet handling code.
+	 * @param buf the buffer, positioned where the packet starts
+	 */
+	public final void writeTo(ByteBuffer buf) {
+		_buf = buf;
+		write();
+	}
 }
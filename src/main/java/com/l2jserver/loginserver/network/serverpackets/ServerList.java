@@ -18,17 +18,12 @@
  */
 package com.l2jserver.loginserver.network.serverpackets;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.List;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.l2jserver.loginserver.GameServerTable;
-import com.l2jserver.loginserver.GameServerTable.GameServerInfo;
 import com.l2jserver.loginserver.network.L2LoginClient;
 import com.l2jserver.loginserver.network.gameserverpackets.ServerStatus;
 
@@ -56,90 +51,92 @@ import com.l2jserver.loginserver.network.gameserverpackets.ServerStatus;
  * ]
  * </pre>
  * 
- * Server will be considered as Good when the number of online players<br>
+ * When the game server reports the Auto status, it will be considered as Good when the number of online players<br>
  * is less than half the maximum. as Normal between half and 4/5<br>
- * and Full when there's more than 4/5 of the maximum number of players.
+ * and Full when there's more than 4/5 of the maximum number of players.<br>
+ * The thresholds are configured by AutoStatusNormalLoad and AutoStatusFullLoad.
  * @version 2.6.1.0
  */
 public final class ServerList extends L2LoginServerPacket {
 	
-	private static final Logger LOG = LoggerFactory.getLogger(ServerList.class);
+	/** Size of a server in the server section. */
+	private static final int SERVER_SIZE = 21;
+	
+	/** Offset of the current number of players in a server, after the id, IP, port, age limit and PvP flag. */
+	private static final int CURRENT_PLAYERS_OFFSET = 11;
 	
-	private final List<ServerData> _servers;
+	private final int _serverCount;
+	private final byte[] _serverSection;
 	private final int _lastServer;
 	private final Map<Integer, Integer> _charsOnServers;
 	private final Map<Integer, long[]> _charsToDelete;
 	
-	static class ServerData {
-		protected byte[] _ip;
-		protected final int _port;
-		protected final int _ageLimit;
-		protected final boolean _pvp;
-		protected final int _currentPlayers;
-		protected final int _maxPlayers;
-		protected final boolean _brackets;
-		protected boolean _clock;
-		protected final int _status;
-		protected final int _serverId;
-		protected final int _serverType;
-		
-		ServerData(L2LoginClient client, GameServerInfo gsi) {
-			try {
-				_ip = InetAddress.getByName(gsi.getServerAddress(client.getConnection().getInetAddress())).getAddress();
-			} catch (UnknownHostException ex) {
-				LOG.warn("There has been an error getting IP from host!", ex);
-				_ip = new byte[4];
-				_ip[0] = 127;
-				_ip[1] = 0;
-				_ip[2] = 0;
-				_ip[3] = 1;
-			}
-			
-			_port = gsi.getPort();
-			_pvp = gsi.isPvp();
-			_serverType = gsi.getServerType();
-			_currentPlayers = gsi.getCurrentPlayerCount();
-			_maxPlayers = gsi.getMaxPlayers();
-			_ageLimit = 0;
-			_brackets = gsi.isShowingBrackets();
-			// If server GM-only - show status only to GMs
-			_status = gsi.getStatus() != ServerStatus.STATUS_GM_ONLY ? gsi.getStatus() : client.getAccessLevel() > 0 ? gsi.getStatus() : ServerStatus.STATUS_DOWN;
-			_serverId = gsi.getId();
-		}
+	/**
+	 * A game server as shown to a client.
+	 * @param serverId the server id
+	 * @param ip the server IP for the client
+	 * @param port the server port
+	 * @param pvp if the server is PvP
+	 * @param currentPlayers the current number of players
+	 * @param maxPlayers the maximum number of players
+	 * @param status the server status for the client
+	 * @param serverType the server type
+	 * @param brackets if the server name is shown with brackets
+	 */
+	public record ServerData(int serverId, byte[] ip, int port, boolean pvp, int currentPlayers, int maxPlayers, int status, int serverType, boolean brackets) {
 	}
 	
 	public ServerList(L2LoginClient client) {
-		_servers = new ArrayList<>(GameServerTable.getInstance().getRegisteredGameServers().size());
+		final var serverList = GameServerTable.getInstance().getServerList();
+		_serverCount = serverList.getServerCount();
+		// If server GM-only - show status only to GMs
+		_serverSection = serverList.getServerSection(client.getInetAddress(), client.getAccessLevel() > 0);
 		_lastServer = client.getLastServer();
-		for (GameServerInfo gsi : GameServerTable.getInstance().getRegisteredGameServers().values()) {
-			_servers.add(new ServerData(client, gsi));
+		// The game servers update the characters of the client until it leaves
+		_charsOnServers = client.getCharsOnServ() != null ? Map.copyOf(client.getCharsOnServ()) : null;
+		_charsToDelete = client.getCharsWaitingDelOnServ() != null ? Map.copyOf(client.getCharsWaitingDelOnServ()) : null;
+	}
+	
+	/**
+	 * Encodes the servers of the packet, it's the same for every client with the same view of the servers.
+	 * @param servers the servers as shown to the client
+	 * @return the server section
+	 */
+	public static byte[] createServerSection(List<ServerData> servers) {
+		final var buf = ByteBuffer.allocate(servers.size() * SERVER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for (ServerData server : servers) {
+			buf.put((byte) server.serverId()); // server id
+			
+			buf.put(server.ip(), 0, 4);
+			
+			buf.putInt(server.port());
+			buf.put((byte) 0); // Age Limit 0, 15, 18
+			buf.put((byte) (server.pvp() ? 0x01 : 0x00));
+			buf.putShort((short) server.currentPlayers());
+			buf.putShort((short) server.maxPlayers());
+			buf.put((byte) (server.status() == ServerStatus.STATUS_DOWN ? 0x00 : 0x01));
+			buf.putInt(server.serverType()); // 1: Normal, 2: Relax, 4: Public Test, 8: No Label, 16: Character Creation Restricted, 32: Event, 64: Free
+			buf.put((byte) (server.brackets() ? 0x01 : 0x00));
 		}
-		_charsOnServers = client.getCharsOnServ();
-		_charsToDelete = client.getCharsWaitingDelOnServ();
+		return buf.array();
+	}
+	
+	/**
+	 * Sets the current number of players of a server in an encoded server section.
+	 * @param section the server section
+	 * @param index the index of the server in the section
+	 * @param currentPlayers the current number of players
+	 */
+	public static void setCurrentPlayers(byte[] section, int index, int currentPlayers) {
+		ByteBuffer.wrap(section).order(ByteOrder.LITTLE_ENDIAN).putShort((index * SERVER_SIZE) + CURRENT_PLAYERS_OFFSET, (short) currentPlayers);
 	}
 	
 	@Override
 	public void write() {
 		writeC(0x04);
-		writeC(_servers.size());
+		writeC(_serverCount);
 		writeC(_lastServer);
-		for (ServerData server : _servers) {
-			writeC(server._serverId); // server id
-			
-			writeC(server._ip[0] & 0xff);
-			writeC(server._ip[1] & 0xff);
-			writeC(server._ip[2] & 0xff);
-			writeC(server._ip[3] & 0xff);
-			
-			writeD(server._port);
-			writeC(server._ageLimit); // Age Limit 0, 15, 18
-			writeC(server._pvp ? 0x01 : 0x00);
-			writeH(server._currentPlayers);
-			writeH(server._maxPlayers);
-			writeC(server._status == ServerStatus.STATUS_DOWN ? 0x00 : 0x01);
-			writeD(server._serverType); // 1: Normal, 2: Relax, 4: Public Test, 8: No Label, 16: Character Creation Restricted, 32: Event, 64: Free
-			writeC(server._brackets ? 0x01 : 0x00);
-		}
+		writeB(_serverSection);
 		writeH(0x00); // unknown
 		if (_charsOnServers != null) {
 			writeC(_charsOnServers.size());
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.security;
+
+import com.l2jserver.loginserver.security.crypt.BlowfishEngine;
+
+/**
+ * Blowfish key for login client communication, with its key schedule.<br>
+ * Immutable and shared by every client the key is assigned to, the Blowfish engine holds no per client state.
+ * @version 2.6.5.2
+ */
+public final class BlowfishKey {
+	
+	private final byte[] _key;
+	
+	private final BlowfishEngine _engine;
+	
+	public BlowfishKey(byte[] key) {
+		_key = key;
+		_engine = new BlowfishEngine(key);
+	}
+	
+	public byte[] getKey() {
+		return _key;
+	}
+	
+	public BlowfishEngine getEngine() {
+		return _engine;
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.security;
+
+import static com.l2jserver.loginserver.config.Configuration.server;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of the RSA and Blowfish key material, so restarts do not have to wait for key generation.<br>
+ * The file is encrypted with AES-GCM using a key derived from the configured local secret, it is written in background whenever the key material changes.
+ * @version 2.6.5.2
+ */
+public final class KeyCache {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(KeyCache.class);
+	
+	private static final int MAGIC = 0x4C324B43;
+	
+	private static final int VERSION = 1;
+	
+	private static final int SALT_LENGTH = 16;
+	
+	private static final int IV_LENGTH = 12;
+	
+	private static final int KDF_ITERATIONS = 20000;
+	
+	private static final String BLOWFISH_SECTION = "blowfish";
+	
+	private final boolean _enabled;
+	
+	private final Path _file;
+	
+	private final Map<String, List<KeyPair>> _keyPairs = new ConcurrentHashMap<>();
+	
+	private final Map<String, List<byte[]>> _keys = new ConcurrentHashMap<>();
+	
+	private final ExecutorService _writer;
+	
+	private KeyCache() {
+		_file = Paths.get(server().getKeyCacheFile());
+		final var secret = server().getKeyCacheSecret();
+		final boolean hasSecret = (secret != null) && !secret.isBlank();
+		if (server().isKeyCacheEnabled() && !hasSecret) {
+			LOG.warn("Key cache is enabled but KeyCacheSecret is empty, key cache disabled!");
+		}
+		_enabled = server().isKeyCacheEnabled() && hasSecret;
+		_writer = _enabled ? Executors.newSingleThreadExecutor(r -> {
+			final var thread = new Thread(r, "KeyCacheWriter");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+		
+		if (_enabled) {
+			load();
+		}
+	}
+	
+	/**
+	 * Gets the cached RSA key pairs of the given section.
+	 * @param section the section name
+	 * @return the cached key pairs, empty if none
+	 */
+	public List<KeyPair> getKeyPairs(String section) {
+		return _keyPairs.getOrDefault(section, List.of());
+	}
+	
+	/**
+	 * Gets the cached Blowfish keys.
+	 * @return the cached Blowfish keys, empty if none
+	 */
+	public List<byte[]> getBlowfishKeys() {
+		return _keys.getOrDefault(BLOWFISH_SECTION, List.of());
+	}
+	
+	/**
+	 * Replaces the RSA key pairs of the given section and writes the cache in background.
+	 * @param section the section name
+	 * @param keyPairs the key pairs
+	 */
+	public void storeKeyPairs(String section, List<KeyPair> keyPairs) {
+		if (!_enabled) {
+			return;
+		}
+		_keyPairs.put(section, List.copyOf(keyPairs));
+		_writer.execute(this::save);
+	}
+	
+	/**
+	 * Replaces the Blowfish keys and writes the cache in background.
+	 * @param keys the Blowfish keys
+	 */
+	public void storeBlowfishKeys(List<byte[]> keys) {
+		if (!_enabled) {
+			return;
+		}
+		_keys.put(BLOWFISH_SECTION, List.copyOf(keys));
+		_writer.execute(this::save);
+	}
+	
+	private void load() {
+		if (!Files.isRegularFile(_file)) {
+			LOG.info("Key cache {} not found, it will be created once the keys are generated.", _file);
+			return;
+		}
+		
+		final long start = System.currentTimeMillis();
+		try (var in = new DataInputStream(new ByteArrayInputStream(decrypt(Files.readAllBytes(_file))))) {
+			final var keyFactory = KeyFactory.getInstance("RSA");
+			final int sections = in.readInt();
+			for (int i = 0; i < sections; i++) {
+				final String section = in.readUTF();
+				final int count = in.readInt();
+				final List<KeyPair> keyPairs = new ArrayList<>(count);
+				for (int j = 0; j < count; j++) {
+					final var publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(readBytes(in)));
+					final var privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(readBytes(in)));
+					keyPairs.add(new KeyPair(publicKey, privateKey));
+				}
+				_keyPairs.put(section, keyPairs);
+			}
+			
+			final int count = in.readInt();
+			final List<byte[]> keys = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				keys.add(readBytes(in));
+			}
+			_keys.put(BLOWFISH_SECTION, keys);
+			LOG.info("Loaded key cache {} in {} ms.", _file, System.currentTimeMillis() - start);
+		} catch (Exception ex) {
+			_keyPairs.clear();
+			_keys.clear();
+			LOG.warn("Unable to load key cache {}, keys will be generated!", _file, ex);
+		}
+	}
+	
+	private void save() {
+		try {
+			final var baos = new ByteArrayOutputStream();
+			try (var out = new DataOutputStream(baos)) {
+				final var sections = Map.copyOf(_keyPairs);
+				out.writeInt(sections.size());
+				for (var entry : sections.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().size());
+					for (KeyPair keyPair : entry.getValue()) {
+						writeBytes(out, keyPair.getPublic().getEncoded());
+						writeBytes(out, keyPair.getPrivate().getEncoded());
+					}
+				}
+				
+				final var keys = getBlowfishKeys();
+				out.writeInt(keys.size());
+				for (byte[] key : keys) {
+					writeBytes(out, key);
+				}
+			}
+			
+			final Path tmp = _file.resolveSibling(_file.getFileName() + ".tmp");
+			Files.write(tmp, encrypt(baos.toByteArray()));
+			try {
+				Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+			} catch (UnsupportedOperationException ex) {
+				// Not a POSIX file system.
+			}
+			Files.move(tmp, _file, REPLACE_EXISTING, ATOMIC_MOVE);
+		} catch (Exception ex) {
+			LOG.warn("Unable to write key cache {}!", _file, ex);
+		}
+	}
+	
+	private static byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+		final var random = new SecureRandom();
+		final byte[] salt = new byte[SALT_LENGTH];
+		final byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(salt);
+		random.nextBytes(iv);
+		
+		final var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(ENCRYPT_MODE, deriveKey(salt), new GCMParameterSpec(128, iv));
+		final byte[] encrypted = cipher.doFinal(plain);
+		return ByteBuffer.allocate(8 + SALT_LENGTH + IV_LENGTH + encrypted.length) //
+			.putInt(MAGIC) //
+			.putInt(VERSION) //
+			.put(salt) //
+			.put(iv) //
+			.put(encrypted) //
+			.array();
+	}
+	
+	private static byte[] decrypt(byte[] data) throws GeneralSecurityException, IOException {
+		final var buf = ByteBuffer.wrap(data);
+		if ((data.length < (8 + SALT_LENGTH + IV_LENGTH)) || (buf.getInt() != MAGIC) || (buf.getInt() != VERSION)) {
+			throw new IOException("Invalid key cache file!");
+		}
+		
+		final byte[] salt = new byte[SALT_LENGTH];
+		final byte[] iv = new byte[IV_LENGTH];
+		buf.get(salt);
+		buf.get(iv);
+		
+		final var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(DECRYPT_MODE, deriveKey(salt), new GCMParameterSpec(128, iv));
+		return cipher.doFinal(data, buf.position(), buf.remaining());
+	}
+	
+	private static SecretKey deriveKey(byte[] salt) throws GeneralSecurityException {
+		final var spec = new PBEKeySpec(server().getKeyCacheSecret().toCharArray(), salt, KDF_ITERATIONS, 256);
+		try {
+			final var factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+			return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+		} finally {
+			spec.clearPassword();
+		}
+	}
+	
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		final byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+		return data;
+	}
+	
+	private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+		out.writeInt(data.length);
+		out.write(data);
+	}
+	
+	public static KeyCache getInstance() {
+		return SingletonHolder.INSTANCE;
+	}
+	
+	private static class SingletonHolder {
+		protected static final KeyCache INSTANCE = new KeyCache();
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.security;
+
+import static java.security.spec.RSAKeyGenParameterSpec.F4;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.l2jserver.commons.util.Rnd;
+
+/**
+ * Pool of RSA key pairs generated in parallel in background.<br>
+ * Callers can wait for a minimum number of keys instead of the whole pool, once the pool is full the keys are periodically replaced one slot at a time.<br>
+ * Readers never block, a key handed out keeps working after it has been rotated out of the pool.<br>
+ * The pool can be seeded with previously generated keys, in that case they are refreshed in background right away.
+ * @param <T> the key type handed out by the pool
+ * @version 2.6.5.2
+ */
+public final class KeyPairPool<T> {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(KeyPairPool.class);
+	
+	private static final ExecutorService GENERATORS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreadFactory("KeyPairGenerator"));
+	
+	/** Number of times the generation of a key is tried before giving up on it. */
+	private static final int GENERATION_ATTEMPTS = 3;
+	
+	private static final ScheduledExecutorService ROTATION = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("KeyPairRotation"));
+	
+	private final String _name;
+	
+	private final int _keySize;
+	
+	private final Function<KeyPair, T> _factory;
+	
+	private final AtomicReferenceArray<T> _keys;
+	
+	private final AtomicReferenceArray<KeyPair> _pairs;
+	
+	private final AtomicInteger _pending = new AtomicInteger();
+	
+	private final int _required;
+	
+	private final CountDownLatch _minimum;
+	
+	private final AtomicInteger _failed = new AtomicInteger();
+	
+	private volatile int _count;
+	
+	private long _startTime;
+	
+	private Consumer<List<KeyPair>> _listener = keyPairs -> {
+		// Do nothing.
+	};
+	
+	/**
+	 * Creates a key pair pool, no key is generated until {@link #start(long)} is called.
+	 * @param name the pool name, for logging purposes
+	 * @param size the number of keys in the pool
+	 * @param keySize the RSA key size in bits
+	 * @param minimum the number of keys {@link #awaitMinimum()} waits for
+	 * @param factory the function wrapping each generated key pair
+	 */
+	public KeyPairPool(String name, int size, int keySize, int minimum, Function<KeyPair, T> factory) {
+		_name = name;
+		_keySize = keySize;
+		_factory = factory;
+		_keys = new AtomicReferenceArray<>(size);
+		_pairs = new AtomicReferenceArray<>(size);
+		_required = Math.max(1, Math.min(minimum, size));
+		_minimum = new CountDownLatch(_required);
+	}
+	
+	/**
+	 * Sets the listener notified with all the key pairs of the pool once it has been filled and after each rotation.
+	 * @param listener the listener
+	 */
+	public void setListener(Consumer<List<KeyPair>> listener) {
+		_listener = listener;
+	}
+	
+	/**
+	 * Starts generating the keys in parallel and schedules their rotation.
+	 * @param rotationTime the time in minutes between rotations, 0 disables rotation
+	 */
+	public void start(long rotationTime) {
+		start(List.of(), rotationTime);
+	}
+	
+	/**
+	 * Seeds the pool with the given key pairs, starts generating the missing keys in parallel and schedules their rotation.
+	 * @param cached previously generated key pairs, the ones with a different key size are ignored
+	 * @param rotationTime the time in minutes between rotations, 0 disables rotation
+	 */
+	public void start(List<KeyPair> cached, long rotationTime) {
+		_startTime = System.currentTimeMillis();
+		for (KeyPair keyPair : cached) {
+			if ((_count < _keys.length()) && (((RSAPublicKey) keyPair.getPublic()).getModulus().bitLength() == _keySize)) {
+				add(_factory.apply(keyPair), keyPair);
+				_minimum.countDown();
+			}
+		}
+		
+		final int missing = _keys.length() - _count;
+		_pending.set(missing);
+		for (int i = 0; i < missing; i++) {
+			GENERATORS.execute(this::fill);
+		}
+		
+		if (missing == 0) {
+			LOG.info("Loaded {} cached {} bits RSA key pairs for {}.", _count, _keySize, _name);
+			// Cached keys are refreshed right away, the pool keeps serving them meanwhile.
+			ROTATION.execute(this::rotate);
+		}
+		
+		if (rotationTime > 0) {
+			ROTATION.scheduleAtFixedRate(this::rotate, rotationTime, rotationTime, MINUTES);
+		}
+	}
+	
+	/**
+	 * Waits until the minimum number of keys has been generated.
+	 * @throws IllegalStateException if the minimum number of keys couldn't be generated
+	 */
+	public void awaitMinimum() {
+		try {
+			_minimum.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (_count < _required) {
+			throw new IllegalStateException("Could not generate " + _required + " RSA key pairs for " + _name + "!");
+		}
+	}
+	
+	/**
+	 * Gets a random key from the pool.
+	 * @return a random key, {@code null} if none has been generated yet
+	 */
+	public T get() {
+		final int count = _count;
+		if (count == 0) {
+			return null;
+		}
+		return _keys.get(Rnd.nextInt(count));
+	}
+	
+	/**
+	 * Gets the number of keys currently available.
+	 * @return the number of keys
+	 */
+	public int size() {
+		return _count;
+	}
+	
+	private synchronized void add(T key, KeyPair keyPair) {
+		_pairs.set(_count, keyPair);
+		_keys.set(_count, key);
+		_count++;
+	}
+	
+	private void fill() {
+		KeyPair keyPair = null;
+		for (int attempt = 0; (keyPair == null) && (attempt < GENERATION_ATTEMPTS); attempt++) {
+			keyPair = generate();
+		}
+		
+		if (keyPair != null) {
+			add(_factory.apply(keyPair), keyPair);
+			_minimum.countDown();
+		} else if ((_keys.length() - _failed.incrementAndGet()) < _required) {
+			// The minimum can't be reached anymore, release the waiters so they fail.
+			while (_minimum.getCount() > 0) {
+				_minimum.countDown();
+			}
+		}
+		
+		if (_pending.decrementAndGet() == 0) {
+			LOG.info("Generated {} {} bits RSA key pairs for {} in {} ms.", _count, _keySize, _name, System.currentTimeMillis() - _startTime);
+			notifyListener();
+		}
+	}
+	
+	private void rotate() {
+		final int count = _count;
+		final var remaining = new AtomicInteger(count);
+		for (int i = 0; i < count; i++) {
+			final int slot = i;
+			GENERATORS.execute(() -> {
+				final KeyPair keyPair = generate();
+				if (keyPair != null) {
+					final T key = _factory.apply(keyPair);
+					synchronized (this) {
+						_pairs.set(slot, keyPair);
+						_keys.set(slot, key);
+					}
+				}
+				
+				if (remaining.decrementAndGet() == 0) {
+					notifyListener();
+				}
+			});
+		}
+		LOG.info("Rotating {} RSA key pairs for {}.", count, _name);
+	}
+	
+	private void notifyListener() {
+		final List<KeyPair> keyPairs = new ArrayList<>(_count);
+		synchronized (this) {
+			for (int i = 0; i < _count; i++) {
+				keyPairs.add(_pairs.get(i));
+			}
+		}
+		
+		try {
+			_listener.accept(keyPairs);
+		} catch (Exception ex) {
+			LOG.warn("There has been an error notifying the RSA key pairs of {}!", _name, ex);
+		}
+	}
+	
+	private KeyPair generate() {
+		try {
+			// Key pair generators are not thread safe, one per key.
+			final var keygen = KeyPairGenerator.getInstance("RSA");
+			keygen.initialize(new RSAKeyGenParameterSpec(_keySize, F4));
+			return keygen.generateKeyPair();
+		} catch (Exception ex) {
+			LOG.error("There has been an error generating a RSA key pair for {}!", _name, ex);
+			return null;
+		}
+	}
+	
+	private static ThreadFactory daemonThreadFactory(String name) {
+		final var id = new AtomicInteger();
+		return r -> {
+			final var thread = new Thread(r, name + "-" + id.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -21,6 +21,10 @@ package com.l2jserver.loginserver.security;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.interfaces.RSAPublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.l2jserver.loginserver.network.serverpackets.Init;
 
 public class ScrambledKeyPair {
 	
@@ -28,6 +32,9 @@ public class ScrambledKeyPair {
 	
 	private final byte[] scrambledModulus;
 	
+	/** Init packets for this key pair by Blowfish key, built on first use. */
+	private final Map<BlowfishKey, byte[]> initTemplates = new ConcurrentHashMap<>();
+	
 	public ScrambledKeyPair(KeyPair pPair) {
 		pair = pPair;
 		scrambledModulus = scrambleModulus(((RSAPublicKey) pair.getPublic()).getModulus());
@@ -41,6 +48,15 @@ public class ScrambledKeyPair {
 		return scrambledModulus;
 	}
 	
+	/**
+	 * Gets the Init packet, without session id, for this key pair and the given Blowfish key.
+	 * @param blowfishKey the Blowfish key
+	 * @return the Init packet template
+	 */
+	public byte[] getInitTemplate(BlowfishKey blowfishKey) {
+		return initTemplates.computeIfAbsent(blowfishKey, k -> Init.createTemplate(scrambledModulus, k.getKey()));
+	}
+	
 	private byte[] scrambleModulus(BigInteger modulus) {
 		byte[] scrambledMod = modulus.toByteArray();
 		
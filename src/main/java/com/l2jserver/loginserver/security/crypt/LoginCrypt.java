@@ -18,15 +18,24 @@
  */
 package com.l2jserver.loginserver.security.crypt;
 
+import static com.l2jserver.loginserver.config.Configuration.mmo;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.l2jserver.commons.security.crypt.NewCrypt;
 import com.l2jserver.commons.util.Rnd;
 
 /**
  * @author KenM
  */
 public class LoginCrypt {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(LoginCrypt.class);
+	
 	private static final byte[] STATIC_BLOWFISH_KEY = {
 		(byte) 0x6b,
 		(byte) 0x60,
@@ -46,8 +55,11 @@ public class LoginCrypt {
 		(byte) 0x6c
 	};
 	
-	private static final NewCrypt _STATIC_CRYPT = new NewCrypt(STATIC_BLOWFISH_KEY);
-	private NewCrypt _crypt = null;
+	/** Vector API checksum, {@code null} to use the scalar checksum fused with the Blowfish pass. */
+	private static final PacketChecksum VECTOR_CHECKSUM = loadVectorChecksum();
+	
+	private static final BlowfishEngine _STATIC_CRYPT = new BlowfishEngine(STATIC_BLOWFISH_KEY);
+	private BlowfishEngine _crypt = null;
 	private boolean _static = true;
 	
 	/**
@@ -55,7 +67,15 @@ public class LoginCrypt {
 	 * @param key the blowfish key to initialize the dynamic blowfish cipher with
 	 */
 	public void setKey(byte[] key) {
-		_crypt = new NewCrypt(key);
+		_crypt = new BlowfishEngine(key);
+	}
+	
+	/**
+	 * Method to initialize the blowfish cipher with an already scheduled key, shared with other clients.
+	 * @param crypt the blowfish engine of the dynamic key
+	 */
+	public void setKey(BlowfishEngine crypt) {
+		_crypt = crypt;
 	}
 	
 	/**
@@ -67,15 +87,30 @@ public class LoginCrypt {
 	 * @throws IOException the size is not multiple of blowfishs block size or the raw array can't hold size bytes starting at offset due to it's size
 	 */
 	public boolean decrypt(byte[] raw, final int offset, final int size) throws IOException {
+		return decrypt(ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN), offset, size);
+	}
+	
+	/**
+	 * Method to decrypt an incoming login client packet in place, works on heap and direct buffers.
+	 * @param buf buffer with encrypted data, its position is not modified
+	 * @param offset absolute index where the encrypted data is located
+	 * @param size number of bytes of encrypted data
+	 * @return true when checksum could be verified, false otherwise
+	 * @throws IOException the size is not multiple of blowfishs block size or the buffer can't hold size bytes starting at offset due to it's limit
+	 */
+	public boolean decrypt(ByteBuffer buf, final int offset, final int size) throws IOException {
 		if ((size % 8) != 0) {
 			throw new IOException("size have to be multiple of 8");
 		}
-		if ((offset + size) > raw.length) {
+		if ((offset + size) > buf.limit()) {
 			throw new IOException("raw array too short for size starting from offset");
 		}
 		
-		_crypt.decrypt(raw, offset, size);
-		return NewCrypt.verifyChecksum(raw, offset, size);
+		if (VECTOR_CHECKSUM != null) {
+			_crypt.decrypt(buf, offset, size);
+			return VECTOR_CHECKSUM.verify(littleEndian(buf), offset, size);
+		}
+		return _crypt.decryptAndVerifyChecksum(buf, offset, size);
 	}
 	
 	/**
@@ -88,6 +123,19 @@ public class LoginCrypt {
 	 * @throws IOException packet is too long to make padding and add verification data
 	 */
 	public int encrypt(byte[] raw, final int offset, int size) throws IOException {
+		return encrypt(ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN), offset, size);
+	}
+	
+	/**
+	 * Method to encrypt an outgoing packet to login client in place, works on heap and direct buffers.<br>
+	 * Performs padding and adds verification data.
+	 * @param buf buffer with plain data, its position is not modified
+	 * @param offset absolute index where the plain data is located
+	 * @param size number of bytes of plain data
+	 * @return the new data size
+	 * @throws IOException packet is too long to make padding and add verification data
+	 */
+	public int encrypt(ByteBuffer buf, final int offset, int size) throws IOException {
 		// reserve checksum
 		size += 4;
 		
@@ -97,21 +145,50 @@ public class LoginCrypt {
 			
 			// padding
 			size += 8 - (size % 8);
-			if ((offset + size) > raw.length) {
+			if ((offset + size) > buf.limit()) {
 				throw new IOException("packet too long");
 			}
-			NewCrypt.encXORPass(raw, offset, size, Rnd.nextInt());
-			_STATIC_CRYPT.crypt(raw, offset, size);
+			_STATIC_CRYPT.encXORPassAndEncrypt(buf, offset, size, Rnd.nextInt());
 			_static = false;
 		} else {
 			// padding
 			size += 8 - (size % 8);
-			if ((offset + size) > raw.length) {
+			if ((offset + size) > buf.limit()) {
 				throw new IOException("packet too long");
 			}
-			NewCrypt.appendChecksum(raw, offset, size);
-			_crypt.crypt(raw, offset, size);
+			if (VECTOR_CHECKSUM != null) {
+				VECTOR_CHECKSUM.append(littleEndian(buf), offset, size);
+				_crypt.encrypt(buf, offset, size);
+			} else {
+				_crypt.appendChecksumAndEncrypt(buf, offset, size);
+			}
 		}
 		return size;
 	}
+	
+	private static ByteBuffer littleEndian(ByteBuffer buf) {
+		return buf.order() == ByteOrder.LITTLE_ENDIAN ? buf : buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Loads the Vector API checksum when enabled, it's loaded by name since it's only built by the vector Maven profile.
+	 * @return the Vector API checksum, {@code null} to use the scalar checksum fused with the Blowfish pass
+	 */
+	private static PacketChecksum loadVectorChecksum() {
+		if (!mmo().isVectorChecksumEnabled()) {
+			return null;
+		}
+		
+		try {
+			final var checksum = (PacketChecksum) Class.forName(LoginCrypt.class.getPackageName() + ".VectorChecksum").getDeclaredConstructor().newInstance();
+			LOG.info("Using Vector API for login packet checksums.");
+			return checksum;
+		} catch (ClassNotFoundException ex) {
+			LOG.warn("Vector API checksum is not built, using scalar login packet checksums! Build the login server with the vector profile to enable it.");
+			return null;
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+			LOG.warn("Vector API is not available, using scalar login packet checksums! Start the JVM with --add-modules jdk.incubator.vector to enable it.", ex);
+			return null;
+		}
+	}
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.security.crypt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * XOR checksum of login packets, computed apart from the Blowfish pass.
+ * @version 2.6.5.2
+ */
+interface PacketChecksum {
+	
+	/**
+	 * Verifies the XOR checksum stored in the last 4 bytes of the given range.
+	 * @param buf little-endian buffer with decrypted data
+	 * @param offset absolute index where the data is located
+	 * @param size number of bytes of data, including the checksum
+	 * @return true when the checksum is valid, false otherwise
+	 */
+	boolean verify(ByteBuffer buf, int offset, int size);
+	
+	/**
+	 * Writes the XOR checksum of the given range into its last 4 bytes.
+	 * @param buf little-endian buffer with plain data
+	 * @param offset absolute index where the data is located
+	 * @param size number of bytes of data, including the room for the checksum
+	 */
+	void append(ByteBuffer buf, int offset, int size);
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.security.crypt;
+
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Login packet checksum computed with the Vector API.<br>
+ * Only built by the vector Maven profile and loaded by name, requires the JVM to be started with {@code --add-modules jdk.incubator.vector}, otherwise loading this class fails.
+ * @version 2.6.5.2
+ */
+final class VectorChecksum implements PacketChecksum {
+	
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	private static final int STEP = SPECIES.vectorByteSize();
+	
+	/**
+	 * Creates the checksum, checking it against the scalar checksum.
+	 * @throws IllegalStateException if the results differ
+	 */
+	VectorChecksum() {
+		selfTest();
+	}
+	
+	/**
+	 * Verifies the XOR checksum stored in the last 4 bytes of the given range.
+	 * @param buf little-endian buffer with decrypted data
+	 * @param offset absolute index where the data is located
+	 * @param size number of bytes of data, including the checksum
+	 * @return true when the checksum is valid, false otherwise
+	 */
+	@Override
+	public boolean verify(ByteBuffer buf, int offset, int size) {
+		if (((size & 3) != 0) || (size <= 4)) {
+			return false;
+		}
+		final int end = (offset + size) - 4;
+		return checksum(buf, offset, end) == buf.getInt(end);
+	}
+	
+	/**
+	 * Writes the XOR checksum of the given range into its last 4 bytes.
+	 * @param buf little-endian buffer with plain data
+	 * @param offset absolute index where the data is located
+	 * @param size number of bytes of data, including the room for the checksum
+	 */
+	@Override
+	public void append(ByteBuffer buf, int offset, int size) {
+		final int end = (offset + size) - 4;
+		buf.putInt(end, checksum(buf, offset, end));
+	}
+	
+	/**
+	 * Checks this implementation against a scalar checksum, forcing the Vector API classes to be linked.
+	 * @throws IllegalStateException if the results differ
+	 */
+	private static void selfTest() {
+		final ByteBuffer buf = ByteBuffer.allocate((STEP * 4) + 12).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < buf.capacity(); i++) {
+			buf.put(i, (byte) ((i * 31) + 7));
+		}
+		
+		int expected = 0;
+		for (int i = 0; i < buf.capacity(); i += 4) {
+			expected ^= buf.getInt(i);
+		}
+		
+		if (checksum(buf, 0, buf.capacity()) != expected) {
+			throw new IllegalStateException("Vector checksum does not match the scalar checksum!");
+		}
+	}
+	
+	private static int checksum(ByteBuffer buf, int offset, int end) {
+		IntVector acc = IntVector.zero(SPECIES);
+		int i = offset;
+		for (; (i + STEP) <= end; i += STEP) {
+			acc = acc.lanewise(XOR, IntVector.fromByteBuffer(SPECIES, buf, i, ByteOrder.LITTLE_ENDIAN));
+		}
+		
+		int checksum = acc.reduceLanes(XOR);
+		for (; i < end; i += 4) {
+			checksum ^= buf.getInt(i);
+		}
+		return checksum;
+	}
+}
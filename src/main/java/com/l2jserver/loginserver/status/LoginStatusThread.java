@@ -31,8 +31,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.l2jserver.loginserver.GameServerTable;
+import com.l2jserver.loginserver.IdleConnectionReaper;
 import com.l2jserver.loginserver.LoginController;
+import com.l2jserver.loginserver.LoginQueue;
 import com.l2jserver.loginserver.LoginServer;
+import com.l2jserver.loginserver.network.L2LoginClient;
+import com.l2jserver.loginserver.network.L2LoginClient.LoginClientState;
 
 public final class LoginStatusThread extends Thread {
 	
@@ -160,6 +164,11 @@ public final class LoginStatusThread extends Thread {
 				} else if (_usrCommand.equals("status")) {
 					// TODO enhance the output
 					_print.println("Registered Server Count: " + GameServerTable.getInstance().getRegisteredGameServers().size());
+					_print.println("Connected Clients: " + LoginController.getInstance().getConnectedClients());
+					_print.println("Clients Timed Out (Connected): " + IdleConnectionReaper.getInstance().getReapedConnections(LoginClientState.CONNECTED));
+					_print.println("Clients Timed Out (GameGuard Authed): " + IdleConnectionReaper.getInstance().getReapedConnections(LoginClientState.AUTHED_GG));
+					_print.println("Queued Logins: " + LoginQueue.getInstance().getWaiting());
+					_print.println("Replies Per Client Packet: " + String.format("%.2f", L2LoginClient.getRepliesPerClientPacket()));
 				} else if (_usrCommand.startsWith("unblock")) {
 					try {
 						_usrCommand = _usrCommand.substring(8);
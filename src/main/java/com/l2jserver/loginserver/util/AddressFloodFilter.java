@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * Connection flood filter by address, for the connections whose peer address is not the socket one, as the ones relayed by a load balancer.<br>
+ * An address connecting more than {@value #MAX_TRIES} times in a row, each less than {@value #INTERVAL} ms after the previous one, is refused until it stays away for that long.
+ * @version 2.6.5.2
+ */
+public final class AddressFloodFilter {
+	
+	/** Time in milliseconds under which a connection counts as a retry of the previous one. */
+	private static final long INTERVAL = 1000;
+	
+	private static final int MAX_TRIES = 3;
+	
+	/** Time in milliseconds after which an address that didn't connect is forgotten. */
+	private static final long PURGE_TIME = 60000;
+	
+	private final Map<InetAddress, Flood> _floods = new ConcurrentHashMap<>();
+	
+	public AddressFloodFilter() {
+		final var executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final var thread = new Thread(r, "AddressFloodFilter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this::purge, PURGE_TIME, PURGE_TIME, MILLISECONDS);
+	}
+	
+	/**
+	 * Checks a new connection from the given address.
+	 * @param address the address of the peer
+	 * @return {@code true} if the connection is accepted, {@code false} if the address is flooding
+	 */
+	public boolean accept(InetAddress address) {
+		final long now = System.currentTimeMillis();
+		final var flood = _floods.putIfAbsent(address, new Flood(now));
+		if (flood == null) {
+			return true;
+		}
+		
+		synchronized (flood) {
+			final boolean retry = (now - flood._lastAccess) < INTERVAL;
+			flood._lastAccess = now;
+			if (!retry) {
+				flood._tries = 0;
+				flood._flooding = false;
+				return true;
+			}
+			
+			if (flood._flooding || (++flood._tries > MAX_TRIES)) {
+				flood._flooding = true;
+				return false;
+			}
+			return true;
+		}
+	}
+	
+	private void purge() {
+		final long now = System.currentTimeMillis();
+		_floods.values().removeIf(flood -> (now - flood._lastAccess) > PURGE_TIME);
+	}
+	
+	private static final class Flood {
+		private volatile long _lastAccess;
+		
+		private int _tries;
+		
+		private boolean _flooding;
+		
+		Flood(long lastAccess) {
+			_lastAccess = lastAccess;
+		}
+	}
+}
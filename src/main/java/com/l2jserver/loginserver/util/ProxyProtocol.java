@@ -0,0 +1,296 @@
+/*
+ * Copyright © 2004-2020 L2J Server
+ * 
+ * This file is part of L2J Server.
+ * 
+ * L2J Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * L2J Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.l2jserver.loginserver.util;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HAProxy PROXY protocol version 1 and 2 reader.<br>
+ * Reads the header a load balancer sends before any data, to get the address of the real peer.<br>
+ * Only the header is read from the socket, the data that follows is left for the protocol handler.
+ * @see <a href="https://www.haproxy.org/download/2.4/doc/proxy-protocol.txt">The PROXY protocol</a>
+ * @version 2.6.5.2
+ */
+public final class ProxyProtocol {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ProxyProtocol.class);
+	
+	private static final byte[] V2_SIGNATURE = { 0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A };
+	
+	private static final byte[] V1_SIGNATURE = "PROXY ".getBytes(US_ASCII);
+	
+	/** Maximum length of a version 1 header, including the CRLF. */
+	private static final int V1_MAX_LENGTH = 107;
+	
+	private static final int V2_COMMAND_LOCAL = 0x00;
+	
+	private static final int V2_COMMAND_PROXY = 0x01;
+	
+	private static final int V2_FAMILY_INET = 0x01;
+	
+	private static final int V2_FAMILY_INET6 = 0x02;
+	
+	private final List<IPSubnet> _trustedProxies = new ArrayList<>();
+	
+	private final int _timeout;
+	
+	/**
+	 * Creates a PROXY protocol reader.
+	 * @param trustedProxies the addresses or subnets allowed to send PROXY headers
+	 * @param timeout the time in milliseconds to wait for the header
+	 */
+	public ProxyProtocol(List<String> trustedProxies, int timeout) {
+		for (String proxy : trustedProxies) {
+			if (proxy.isBlank()) {
+				continue;
+			}
+			try {
+				_trustedProxies.add(new IPSubnet(proxy.trim()));
+			} catch (Exception ex) {
+				LOG.warn("Invalid trusted proxy {}!", proxy, ex);
+			}
+		}
+		_timeout = timeout;
+	}
+	
+	/**
+	 * Checks if the address is allowed to send PROXY headers.
+	 * @param address the address of the peer
+	 * @return {@code true} if the address is a trusted proxy
+	 */
+	public boolean isTrusted(InetAddress address) {
+		for (IPSubnet proxy : _trustedProxies) {
+			if (proxy.equals(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Reads the PROXY header from a blocking socket.
+	 * @param socket the socket
+	 * @return the address of the real peer, the address of the proxy for health checks ({@code LOCAL} and {@code UNKNOWN} headers)
+	 * @throws IOException if the header is missing, malformed or does not arrive in time
+	 */
+	public InetAddress readHeader(Socket socket) throws IOException {
+		final int timeout = socket.getSoTimeout();
+		socket.setSoTimeout(_timeout);
+		try {
+			// Not buffered, nothing past the header must be read.
+			return readHeader(new DataInputStream(socket.getInputStream()), socket.getInetAddress());
+		} finally {
+			socket.setSoTimeout(timeout);
+		}
+	}
+	
+	private static InetAddress readHeader(DataInputStream in, InetAddress proxy) throws IOException {
+		final byte[] signature = new byte[V2_SIGNATURE.length];
+		in.readFully(signature);
+		if (Arrays.equals(signature, V2_SIGNATURE)) {
+			return readV2(in, proxy);
+		}
+		if (Arrays.equals(signature, 0, V1_SIGNATURE.length, V1_SIGNATURE, 0, V1_SIGNATURE.length)) {
+			return readV1(in, signature, proxy);
+		}
+		throw new IOException("Missing PROXY protocol header!");
+	}
+	
+	private static InetAddress readV1(DataInputStream in, byte[] signature, InetAddress proxy) throws IOException {
+		final byte[] line = Arrays.copyOf(signature, V1_MAX_LENGTH);
+		int length = signature.length;
+		while ((length < 2) || (line[length - 2] != '\r') || (line[length - 1] != '\n')) {
+			if (length == V1_MAX_LENGTH) {
+				throw new IOException("PROXY protocol header is too long!");
+			}
+			line[length++] = in.readByte();
+		}
+		
+		// PROXY TCP4|TCP6|UNKNOWN source destination source_port destination_port
+		final String[] fields = new String(line, 0, length - 2, US_ASCII).split(" ");
+		if ((fields.length > 1) && fields[1].equals("UNKNOWN")) {
+			return proxy;
+		}
+		if (fields.length != 6) {
+			throw new IOException("Malformed PROXY protocol header!");
+		}
+		
+		// Only literal addresses, host names are never resolved.
+		final byte[] address = switch (fields[1]) {
+			case "TCP4" -> parseIPv4(fields[2]);
+			case "TCP6" -> parseIPv6(fields[2]);
+			default -> null;
+		};
+		if (address == null) {
+			throw new IOException("Malformed PROXY protocol source address!");
+		}
+		return InetAddress.getByAddress(address);
+	}
+	
+	/**
+	 * Parses a dotted-quad IPv4 literal.
+	 * @param literal the literal
+	 * @return the address, {@code null} if it's not an IPv4 literal
+	 */
+	private static byte[] parseIPv4(String literal) {
+		final String[] parts = literal.split("\\.", -1);
+		if (parts.length != 4) {
+			return null;
+		}
+		
+		final byte[] address = new byte[4];
+		for (int i = 0; i < 4; i++) {
+			final int value = parseNumber(parts[i], 10, 3);
+			if ((value < 0) || (value > 255)) {
+				return null;
+			}
+			address[i] = (byte) value;
+		}
+		return address;
+	}
+	
+	/**
+	 * Parses an IPv6 literal, with an optional {@code ::} and an optional dotted-quad IPv4 tail, without zone.
+	 * @param literal the literal
+	 * @return the address, {@code null} if it's not an IPv6 literal
+	 */
+	private static byte[] parseIPv6(String literal) {
+		final int gap = literal.indexOf("::");
+		if ((gap >= 0) && (literal.indexOf("::", gap + 1) >= 0)) {
+			return null;
+		}
+		
+		final List<Integer> head = new ArrayList<>(8);
+		final List<Integer> tail = new ArrayList<>(8);
+		if (gap < 0) {
+			if (!parseGroups(literal, head) || (head.size() != 8)) {
+				return null;
+			}
+		} else if (!parseGroups(literal.substring(0, gap), head) || !parseGroups(literal.substring(gap + 2), tail) || ((head.size() + tail.size()) > 7)) {
+			return null;
+		}
+		
+		final byte[] address = new byte[16];
+		for (int i = 0; i < head.size(); i++) {
+			address[i * 2] = (byte) (head.get(i) >> 8);
+			address[(i * 2) + 1] = head.get(i).byteValue();
+		}
+		final int offset = 16 - (tail.size() * 2);
+		for (int i = 0; i < tail.size(); i++) {
+			address[offset + (i * 2)] = (byte) (tail.get(i) >> 8);
+			address[offset + (i * 2) + 1] = tail.get(i).byteValue();
+		}
+		return address;
+	}
+	
+	/**
+	 * Parses colon separated groups of up to 4 hex digits, the last one can be a dotted-quad IPv4 address counting as two groups.
+	 * @param part the groups, empty for none
+	 * @param groups the list the 16 bits groups are added to
+	 * @return {@code true} if the groups are valid
+	 */
+	private static boolean parseGroups(String part, List<Integer> groups) {
+		if (part.isEmpty()) {
+			return true;
+		}
+		
+		final String[] parts = part.split(":", -1);
+		for (int i = 0; i < parts.length; i++) {
+			if ((i == (parts.length - 1)) && (parts[i].indexOf('.') >= 0)) {
+				final byte[] ipv4 = parseIPv4(parts[i]);
+				if (ipv4 == null) {
+					return false;
+				}
+				groups.add(((ipv4[0] & 0xFF) << 8) | (ipv4[1] & 0xFF));
+				groups.add(((ipv4[2] & 0xFF) << 8) | (ipv4[3] & 0xFF));
+				continue;
+			}
+			
+			final int value = parseNumber(parts[i], 16, 4);
+			if (value < 0) {
+				return false;
+			}
+			groups.add(value);
+		}
+		return true;
+	}
+	
+	/**
+	 * Parses a number made of digits only, without sign.
+	 * @param digits the digits
+	 * @param radix the radix
+	 * @param maxDigits the maximum number of digits
+	 * @return the number, {@code -1} if it's not valid
+	 */
+	private static int parseNumber(String digits, int radix, int maxDigits) {
+		if (digits.isEmpty() || (digits.length() > maxDigits)) {
+			return -1;
+		}
+		
+		int value = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			// The header is decoded as ASCII, other digits can't appear
+			final int digit = Character.digit(digits.charAt(i), radix);
+			if (digit < 0) {
+				return -1;
+			}
+			value = (value * radix) + digit;
+		}
+		return value;
+	}
+	
+	private static InetAddress readV2(DataInputStream in, InetAddress proxy) throws IOException {
+		final int versionCommand = in.readUnsignedByte();
+		final int family = in.readUnsignedByte() >> 4;
+		final byte[] addresses = new byte[in.readUnsignedShort()];
+		in.readFully(addresses);
+		if ((versionCommand >> 4) != 2) {
+			throw new IOException("Unsupported PROXY protocol version!");
+		}
+		
+		return switch (versionCommand & 0x0F) {
+			case V2_COMMAND_LOCAL -> proxy;
+			case V2_COMMAND_PROXY -> getSourceAddress(family, addresses, proxy);
+			default -> throw new IOException("Unsupported PROXY protocol command!");
+		};
+	}
+	
+	private static InetAddress getSourceAddress(int family, byte[] addresses, InetAddress proxy) throws IOException {
+		// Source address, destination address, source port and destination port, followed by optional TLVs.
+		if ((family == V2_FAMILY_INET) && (addresses.length >= 12)) {
+			return InetAddress.getByAddress(Arrays.copyOf(addresses, 4));
+		}
+		if ((family == V2_FAMILY_INET6) && (addresses.length >= 36)) {
+			return InetAddress.getByAddress(Arrays.copyOf(addresses, 16));
+		}
+		// Unspecified or UNIX sockets.
+		return proxy;
+	}
+}
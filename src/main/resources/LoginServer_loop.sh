@@ -5,7 +5,20 @@ until [ $err == 0 ];
 do
 	[ -f log/java0.log.0 ] && mv log/java0.log.0 "log/`date +%Y-%m-%d_%H-%M-%S`_java.log"
 	[ -f log/stdout.log ] && mv log/stdout.log "log/`date +%Y-%m-%d_%H-%M-%S`_stdout.log"
-	java -Xms128m -Xmx256m -jar l2jlogin.jar > log/stdout.log 2>&1
+	# (Re)creates the class data sharing archive when missing or older than the jar.
+	[ l2jlogin.jar -nt l2jlogin.jsa ] && java -XX:ArchiveClassesAtExit=l2jlogin.jsa -jar l2jlogin.jar --training-run > log/training.log 2>&1
+	java -Xms128m -Xmx256m -XX:SharedArchiveFile=l2jlogin.jsa -Xshare:auto -jar l2jlogin.jar > log/stdout.log 2>&1
 	err=$?
+	# Exit code 3, the server handed over to the process in login.pid, follow it until it stops.
+	# The PID file is removed on shutdown, if it's left behind the process crashed or restarted.
+	while [ $err == 3 ];
+	do
+		sleep 1
+		if [ ! -f login.pid ]; then
+			err=0
+		elif ! kill -0 `cat login.pid` 2>/dev/null; then
+			err=1
+		fi
+	done
 	sleep 10;
 done
@@ -5,7 +5,10 @@ title Login Server Console
 echo Starting L2J Login Server.
 echo.
 
-java -Xms128m -Xmx256m -jar l2jlogin.jar
+REM Creates the class data sharing archive when missing, delete l2jlogin.jsa after updating l2jlogin.jar.
+if not exist l2jlogin.jsa java -XX:ArchiveClassesAtExit=l2jlogin.jsa -jar l2jlogin.jar --training-run
+
+java -Xms128m -Xmx256m -XX:SharedArchiveFile=l2jlogin.jsa -Xshare:auto -jar l2jlogin.jar
 
 if ERRORLEVEL 2 goto restart
 if ERRORLEVEL 1 goto error